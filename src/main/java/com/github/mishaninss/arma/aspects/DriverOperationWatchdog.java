@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.aspects;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enforces driver operation timeouts on the calling thread. Each thread owns a reusable deadline
+ * slot, and a single daemon thread interrupts threads whose deadline has expired, so no executor
+ * hand-off is needed per driver call. Deadlines are checked with {@link #TICK_MILLIS} resolution.
+ *
+ * <p>An interrupt only releases a call which waits interruptibly, e.g. on the response future of
+ * Selenium's default HTTP client. A call blocked in a socket read which ignores interrupts would
+ * stay blocked, so the HTTP layer registers an abort action by {@link #onExpiry(Runnable)}, e.g.
+ * closing the connection of the request, and the watchdog runs it together with the interrupt.
+ * Drivers with command executors which register no abort action rely on the interrupt only.
+ *
+ * @author Sergey Mishanin
+ */
+public final class DriverOperationWatchdog {
+
+  static final long TICK_MILLIS = 100;
+  static final long GRACE_MILLIS = 1000;
+  private static final DriverOperationWatchdog INSTANCE = new DriverOperationWatchdog();
+  private static final Registration NO_REGISTRATION = () -> {
+  };
+
+  private final Map<Thread, Deadline> deadlines = new ConcurrentHashMap<>();
+  private final ThreadLocal<Deadline> threadDeadline = ThreadLocal.withInitial(() -> {
+    Deadline deadline = new Deadline();
+    deadlines.put(Thread.currentThread(), deadline);
+    return deadline;
+  });
+  private volatile Thread watcher;
+
+  private DriverOperationWatchdog() {
+  }
+
+  public static DriverOperationWatchdog getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Arms the deadline of the current thread. Nested calls are governed by the outermost one.
+   *
+   * @param timeoutMillis - operation timeout in milliseconds
+   * @return true if the deadline has been armed by this call and must be disarmed by it
+   */
+  boolean arm(long timeoutMillis) {
+    Deadline deadline = threadDeadline.get();
+    if (deadline.depth++ > 0) {
+      return false;
+    }
+    ensureWatcherStarted();
+    synchronized (deadline) {
+      deadline.fired = false;
+      deadline.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+    return true;
+  }
+
+  /**
+   * Leaves a guarded operation of the current thread
+   *
+   * @param armed - value returned by the corresponding {@link #arm(long)} call
+   * @return true if the deadline has expired and the thread has been interrupted by the watchdog
+   */
+  boolean disarm(boolean armed) {
+    Deadline deadline = threadDeadline.get();
+    deadline.depth--;
+    if (!armed) {
+      return false;
+    }
+    synchronized (deadline) {
+      deadline.expiresAt = 0;
+      deadline.abort = null;
+      boolean fired = deadline.fired;
+      if (fired) {
+        deadline.fired = false;
+        //clear the interrupted status set by the watchdog
+        Thread.interrupted();
+      }
+      return fired;
+    }
+  }
+
+  /**
+   * Registers an action which releases the current driver call of this thread if its deadline
+   * expires. The action is run on the watchdog thread. Does nothing outside a guarded operation.
+   *
+   * @return registration to be closed when the call is over
+   */
+  public Registration onExpiry(Runnable abort) {
+    Deadline deadline = threadDeadline.get();
+    synchronized (deadline) {
+      if (deadline.expiresAt == 0) {
+        return NO_REGISTRATION;
+      }
+      Runnable previous = deadline.abort;
+      deadline.abort = abort;
+      return () -> {
+        synchronized (deadline) {
+          deadline.abort = previous;
+        }
+      };
+    }
+  }
+
+  /**
+   * Lets the current driver call of this thread run past the operation deadline when it enforces
+   * a timeout of its own, e.g. an HTTP request with a per-command read timeout. The deadline is
+   * never moved closer. When the registration is closed, the original deadline is restored, but
+   * not closer than {@link #GRACE_MILLIS} from now. Does nothing outside a guarded operation.
+   *
+   * @param timeoutMillis - timeout of the call in milliseconds
+   * @return registration to be closed when the call is over
+   */
+  public Registration extend(long timeoutMillis) {
+    Deadline deadline = threadDeadline.get();
+    synchronized (deadline) {
+      if (deadline.expiresAt == 0 || deadline.fired) {
+        return NO_REGISTRATION;
+      }
+      long original = deadline.expiresAt;
+      long extended = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+      if (extended - original <= 0) {
+        return NO_REGISTRATION;
+      }
+      deadline.expiresAt = extended;
+      return () -> {
+        synchronized (deadline) {
+          if (deadline.expiresAt != 0 && !deadline.fired) {
+            long grace = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(GRACE_MILLIS);
+            deadline.expiresAt = grace - original > 0 ? grace : original;
+          }
+        }
+      };
+    }
+  }
+
+  private void ensureWatcherStarted() {
+    if (watcher == null) {
+      synchronized (this) {
+        if (watcher == null) {
+          Thread thread = new Thread(this::watch, "arma-driver-watchdog");
+          thread.setDaemon(true);
+          thread.start();
+          watcher = thread;
+        }
+      }
+    }
+  }
+
+  private void watch() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        Thread.sleep(TICK_MILLIS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      long now = System.nanoTime();
+      deadlines.forEach((thread, deadline) -> {
+        if (!thread.isAlive()) {
+          deadlines.remove(thread);
+          return;
+        }
+        Runnable abort = null;
+        synchronized (deadline) {
+          if (deadline.expiresAt != 0 && !deadline.fired && now - deadline.expiresAt >= 0) {
+            deadline.fired = true;
+            thread.interrupt();
+            abort = deadline.abort;
+          }
+        }
+        if (abort != null) {
+          try {
+            abort.run();
+          } catch (RuntimeException ex) {
+            //the thread has been interrupted anyway
+          }
+        }
+      });
+    }
+  }
+
+  private static class Deadline {
+
+    private int depth;
+    private long expiresAt;
+    private boolean fired;
+    private Runnable abort;
+  }
+
+  /**
+   * Abort action registration
+   */
+  @FunctionalInterface
+  public interface Registration extends AutoCloseable {
+
+    @Override
+    void close();
+  }
+}
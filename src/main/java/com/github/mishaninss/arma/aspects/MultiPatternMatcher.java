@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.aspects;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Aho-Corasick automaton checking whether a text contains any of the given patterns in a single
+ * pass over the text
+ *
+ * @author Sergey Mishanin
+ */
+final class MultiPatternMatcher {
+
+  private final Node root = new Node();
+
+  MultiPatternMatcher(Collection<String> patterns) {
+    patterns.stream()
+        .filter(StringUtils::isNotEmpty)
+        .forEach(this::addPattern);
+    buildFailureLinks();
+  }
+
+  /**
+   * @return true if the text contains at least one of the patterns
+   */
+  boolean containsAny(CharSequence text) {
+    if (text == null) {
+      return false;
+    }
+    Node state = root;
+    for (int i = 0; i < text.length(); i++) {
+      char ch = text.charAt(i);
+      while (state != root && !state.next.containsKey(ch)) {
+        state = state.fail;
+      }
+      state = state.next.getOrDefault(ch, root);
+      if (state.terminal) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void addPattern(String pattern) {
+    Node node = root;
+    for (int i = 0; i < pattern.length(); i++) {
+      node = node.next.computeIfAbsent(pattern.charAt(i), ch -> new Node());
+    }
+    node.terminal = true;
+  }
+
+  private void buildFailureLinks() {
+    Queue<Node> queue = new ArrayDeque<>();
+    root.fail = root;
+    root.next.values().forEach(child -> {
+      child.fail = root;
+      queue.add(child);
+    });
+    while (!queue.isEmpty()) {
+      Node node = queue.poll();
+      node.next.forEach((ch, child) -> {
+        Node fail = node.fail;
+        while (fail != root && !fail.next.containsKey(ch)) {
+          fail = fail.fail;
+        }
+        Node candidate = fail.next.get(ch);
+        child.fail = candidate != null && candidate != child ? candidate : root;
+        child.terminal |= child.fail.terminal;
+        queue.add(child);
+      });
+    }
+  }
+
+  private static class Node {
+
+    private final Map<Character, Node> next = new HashMap<>();
+    private Node fail;
+    private boolean terminal;
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.aspects;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.openqa.selenium.InvalidElementStateException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ordered set of retry policies applied by {@link UiDriverAspects} to UI driver methods. The first
+ * policy matching an exception wins.
+ *
+ * @author Sergey Mishanin
+ */
+@Component
+public class RetryPolicies implements InitializingBean {
+
+  public static final String STALE_ELEMENT = "staleElement";
+  public static final String INVALID_ELEMENT_STATE = "invalidElementState";
+  public static final String NODE_NOT_FOUND = "nodeNotFound";
+
+  public static final String MAX_ATTEMPTS_PROPERTY = "arma.driver.retry.max.attempts";
+  public static final String BACKOFF_PROPERTY = "arma.driver.retry.backoff";
+  public static final String BACKOFF_MULTIPLIER_PROPERTY = "arma.driver.retry.backoff.multiplier";
+
+  @Value("${" + MAX_ATTEMPTS_PROPERTY + ":1}")
+  private int maxAttempts;
+  @Value("${" + BACKOFF_PROPERTY + ":200}")
+  private long backoff;
+  @Value("${" + BACKOFF_MULTIPLIER_PROPERTY + ":2}")
+  private double backoffMultiplier;
+
+  private final List<RetryPolicy> policies = new CopyOnWriteArrayList<>();
+
+  @Override
+  public void afterPropertiesSet() {
+    policies.add(RetryPolicy.on(STALE_ELEMENT, StaleElementReferenceException.class)
+        .maxAttempts(maxAttempts)
+        .clearCache(true));
+    policies.add(RetryPolicy.on(INVALID_ELEMENT_STATE, InvalidElementStateException.class)
+        .maxAttempts(maxAttempts)
+        .clearCache(true)
+        .waitForPageUpdate(true));
+    policies.add(RetryPolicy.onMessage(NODE_NOT_FOUND, "Could not find node with given id")
+        .and(ex -> !(ex instanceof TimeoutException))
+        .maxAttempts(maxAttempts)
+        .backoff(backoff, backoffMultiplier)
+        .clearCache(true)
+        .waitForPageUpdate(true));
+  }
+
+  /**
+   * Returns the first policy matching the exception, or null if the exception should not be
+   * retried
+   */
+  public RetryPolicy findPolicy(Throwable ex) {
+    for (RetryPolicy policy : policies) {
+      if (policy.matches(ex)) {
+        return policy;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Adds a policy with the highest priority
+   */
+  public RetryPolicies addPolicy(RetryPolicy policy) {
+    policies.add(0, policy);
+    return this;
+  }
+
+  public RetryPolicy getPolicy(String name) {
+    return policies.stream()
+        .filter(policy -> policy.getName().equals(name))
+        .findFirst()
+        .orElse(null);
+  }
+
+  public RetryPolicies removePolicy(String name) {
+    policies.removeIf(policy -> policy.getName().equals(name));
+    return this;
+  }
+
+  public List<RetryPolicy> getPolicies() {
+    return new ArrayList<>(policies);
+  }
+}
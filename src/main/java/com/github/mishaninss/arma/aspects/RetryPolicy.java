@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.aspects;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Describes how a UI driver method should be retried after a matching exception
+ *
+ * @author Sergey Mishanin
+ */
+public class RetryPolicy {
+
+  private final String name;
+  private Predicate<Throwable> matcher;
+  private int maxAttempts = 1;
+  private long backoff;
+  private double backoffMultiplier = 1;
+  private boolean clearCache;
+  private boolean waitForPageUpdate;
+
+  public RetryPolicy(String name, Predicate<Throwable> matcher) {
+    this.name = name;
+    this.matcher = matcher;
+  }
+
+  /**
+   * Creates a policy matching exceptions of any of the given types
+   */
+  @SafeVarargs
+  public static RetryPolicy on(String name, Class<? extends Throwable>... exceptionTypes) {
+    return new RetryPolicy(name,
+        ex -> Arrays.stream(exceptionTypes).anyMatch(type -> type.isInstance(ex)));
+  }
+
+  /**
+   * Creates a policy matching exceptions which message contains any of the given fragments
+   */
+  public static RetryPolicy onMessage(String name, String... messageFragments) {
+    return new RetryPolicy(name,
+        ex -> StringUtils.containsAny(ex.getMessage(), messageFragments));
+  }
+
+  public boolean matches(Throwable ex) {
+    return matcher.test(ex);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Restricts the policy to exceptions which also match the given condition
+   */
+  public RetryPolicy and(Predicate<Throwable> condition) {
+    matcher = matcher.and(condition);
+    return this;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * @param maxAttempts - maximum number of retries after the first failed call
+   */
+  public RetryPolicy maxAttempts(int maxAttempts) {
+    this.maxAttempts = maxAttempts;
+    return this;
+  }
+
+  /**
+   * @param backoff    - pause before the first retry in milliseconds
+   * @param multiplier - multiplier of the pause for every next retry
+   */
+  public RetryPolicy backoff(long backoff, double multiplier) {
+    this.backoff = backoff;
+    this.backoffMultiplier = multiplier;
+    return this;
+  }
+
+  /**
+   * Returns pause before the given retry in milliseconds
+   *
+   * @param attempt - number of the retry, starting with 1
+   */
+  public long getBackoff(int attempt) {
+    return (long) (backoff * Math.pow(backoffMultiplier, attempt - 1.0));
+  }
+
+  public boolean shouldClearCache() {
+    return clearCache;
+  }
+
+  public RetryPolicy clearCache(boolean clearCache) {
+    this.clearCache = clearCache;
+    return this;
+  }
+
+  public boolean shouldWaitForPageUpdate() {
+    return waitForPageUpdate;
+  }
+
+  public RetryPolicy waitForPageUpdate(boolean waitForPageUpdate) {
+    this.waitForPageUpdate = waitForPageUpdate;
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
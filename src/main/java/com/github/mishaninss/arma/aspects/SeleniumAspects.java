@@ -16,17 +16,13 @@
 
 package com.github.mishaninss.arma.aspects;
 
-import com.github.mishaninss.arma.data.UiCommonsProperties;
+import com.github.mishaninss.arma.data.WebDriverProperties;
 import com.github.mishaninss.arma.exceptions.SessionLostException;
 import com.github.mishaninss.arma.uidriver.webdriver.IWebDriverFactory;
 import com.github.mishaninss.arma.uidriver.webdriver.WebElementProvider;
-import com.github.mishaninss.arma.utils.ConcurrentUtils;
-import java.lang.reflect.InvocationTargetException;
-import java.net.ConnectException;
-import java.util.Stack;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import org.apache.commons.lang3.StringUtils;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
@@ -34,13 +30,9 @@ import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.openqa.selenium.NoAlertPresentException;
 import org.openqa.selenium.NoSuchElementException;
-import org.openqa.selenium.NoSuchSessionException;
 import org.openqa.selenium.StaleElementReferenceException;
 import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.UnhandledAlertException;
-import org.openqa.selenium.UnsupportedCommandException;
-import org.openqa.selenium.WebDriverException;
-import org.openqa.selenium.remote.UnreachableBrowserException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -54,7 +46,12 @@ public class SeleniumAspects {
   private ApplicationContext applicationContext;
 
   private static final Logger LOGGER = LoggerFactory.getLogger("Selenium");
-  private final ThreadLocal<Stack<String>> callStack = ThreadLocal.withInitial(Stack::new);
+  private static final DriverOperationWatchdog WATCHDOG = DriverOperationWatchdog.getInstance();
+  private static final ThreadLocal<Boolean> UNGUARDED = new ThreadLocal<>();
+  private final ThreadLocal<Deque<String>> callStack = ThreadLocal.withInitial(ArrayDeque::new);
+  private volatile WebDriverProperties.Driver driverProperties;
+  private volatile SessionLostExceptionClassifier exceptionClassifier;
+  private volatile ApplicationContext propertiesContext;
 
   @Pointcut("call(* org.openqa.selenium..* (..))")
   public void pointcutUiDriverCall() {
@@ -77,69 +74,110 @@ public class SeleniumAspects {
           +
           " || (call(* org.openqa.selenium.support.ui.FluentWait.* (..)) && !call(* org.openqa.selenium.support.ui.FluentWait.until (..)))"
           +
-          " || target(org.openqa.selenium.Cookie)")
+          " || target(org.openqa.selenium.Cookie)"
+          //pooled sessions are not current sessions of any thread, so their failures must not
+          //close the current session of the calling thread
+          + " || within(com.github.mishaninss.arma.uidriver.webdriver.WebDriverSessionPool)"
+          //health checks run on their own threads and must not close the current session
+          + " || within(com.github.mishaninss.arma.uidriver.webdriver.SessionHealthMonitor)"
+          //DevTools channel is not a driver session and has timeouts of its own
+          + " || within(com.github.mishaninss.arma.uidriver.webdriver.chrome.CdpChannel)"
+          //HTTP requests are plumbing of an already guarded driver call
+          + " || within(com.github.mishaninss.arma.uidriver.webdriver.chrome.CommandTimeoutsHttpClientFactory)")
   public void ignored() {
     //Declaration of a pointcut for call to any Selenium method
   }
 
+  /**
+   * Runs the action with its Selenium calls not handled by the aspect, including the calls made by
+   * other classes, e.g. session starts by a browser creator. Meant for background work on
+   * sessions which are not the current session of the thread. A thread-local flag checked once
+   * per call is used instead of a cflow pointcut, which would track every advised call.
+   */
+  public static void runUnguarded(Runnable action) {
+    if (UNGUARDED.get() != null) {
+      action.run();
+      return;
+    }
+    UNGUARDED.set(Boolean.TRUE);
+    try {
+      action.run();
+    } finally {
+      UNGUARDED.remove();
+    }
+  }
+
   @Around(value = "pointcutUiDriverCall() && !ignored()")
   public Object adviceAroundSeleniumCall(ProceedingJoinPoint joinPoint) throws Throwable {
-    if (applicationContext.getBean(UiCommonsProperties.class).driver().timeoutsDriverOperation
-        > 0) {
-      try {
-        callStack.get().push(
-            joinPoint.getSignature().getDeclaringTypeName() + "." + joinPoint.getSignature()
-                .getName());
-        LOGGER.trace("call {} [{}]", callStack.get(),
-            applicationContext.getBean(UiCommonsProperties.class).driver().timeoutsDriverOperation);
-        return proceedJoinPoint(joinPoint);
-      } catch (Exception e) {
-        callStack.get().clear();
-        Throwable cause = e;
-
-        if (cause instanceof ExecutionException && cause.getCause() != null) {
-          cause = cause.getCause();
-        }
-        if (cause instanceof java.util.concurrent.TimeoutException) {
-          cause = new SessionLostException(String.format("driver operation timeout [%d] ms",
-              applicationContext.getBean(UiCommonsProperties.class)
-                  .driver().timeoutsDriverOperation),
-              cause);
-        }
-
-        logSeleniumException(joinPoint, cause);
-
-        if (isHardSessionLostException(cause, joinPoint)) {
-          handleHardSessionLostException(cause);
-        } else if (isSessionLostException(cause, joinPoint)) {
-          handleSessionLostException(cause);
-        } else if (cause != null) {
-          throw cause;
-        } else {
-          throw new WebDriverException("Unknown exception");
-        }
-      } finally {
-        if (!callStack.get().isEmpty()) {
-          callStack.get().pop();
-        }
-      }
-      return null;
-    } else {
+    if (UNGUARDED.get() != null) {
+      return joinPoint.proceed();
+    }
+    WebDriverProperties.Driver properties = driverProperties();
+    long timeout = properties.timeoutsDriverOperation;
+    if (timeout <= 0) {
+      return joinPoint.proceed();
+    }
+    boolean tracing = LOGGER.isTraceEnabled();
+    if (tracing) {
+      callStack.get().push(
+          joinPoint.getSignature().getDeclaringTypeName() + "." + joinPoint.getSignature()
+              .getName());
+      LOGGER.trace("call {} [{}]", callStack.get(), timeout);
+    }
+    //command executors with per-command HTTP timeouts extend the deadline of their requests
+    boolean armed = WATCHDOG.arm(timeout);
+    boolean disarmed = false;
+    try {
       return joinPoint.proceed();
+    } catch (Exception e) {
+      boolean expired = WATCHDOG.disarm(armed);
+      disarmed = true;
+      callStack.get().clear();
+      Throwable cause = e;
+
+      if (expired || isCommandTimeoutException(cause)) {
+        cause = new SessionLostException(
+            String.format("driver operation timeout [%d] ms", timeout), cause);
+      }
+
+      logSeleniumException(joinPoint, cause);
+
+      if (isHardSessionLostException(cause, joinPoint)) {
+        handleHardSessionLostException(cause);
+      } else if (isSessionLostException(cause, joinPoint)) {
+        handleSessionLostException(cause);
+      } else {
+        throw cause;
+      }
+    } finally {
+      if (!disarmed) {
+        WATCHDOG.disarm(armed);
+      }
+      if (tracing && !callStack.get().isEmpty()) {
+        callStack.get().pop();
+      }
+    }
+    return null;
+  }
+
+  private WebDriverProperties.Driver driverProperties() {
+    ApplicationContext context = applicationContext;
+    if (driverProperties == null || propertiesContext != context) {
+      WebDriverProperties.Driver properties = context.getBean(WebDriverProperties.class).driver();
+      exceptionClassifier = context.getBean(SessionLostExceptionClassifier.class);
+      driverProperties = properties;
+      propertiesContext = context;
     }
+    return driverProperties;
   }
 
-  private Object proceedJoinPoint(ProceedingJoinPoint joinPoint) throws Exception {
-    return ConcurrentUtils.runWithTimeout(() -> {
-          try {
-            return joinPoint.proceed();
-          } catch (Exception ex) {
-            throw ex;
-          } catch (Throwable throwable) {
-            throw new InvocationTargetException(throwable);
-          }
-        }, applicationContext.getBean(UiCommonsProperties.class).driver().timeoutsDriverOperation,
-        TimeUnit.MILLISECONDS);
+  /**
+   * Detects a command aborted by the default read timeout of the HTTP client. A command with a
+   * timeout of its own fails with a plain {@link TimeoutException} without such a cause.
+   */
+  private boolean isCommandTimeoutException(Throwable cause) {
+    return cause instanceof TimeoutException
+        && ExceptionUtils.indexOfThrowable(cause, java.util.concurrent.TimeoutException.class) >= 0;
   }
 
   private void logSeleniumException(JoinPoint joinPoint, Throwable cause) {
@@ -175,41 +213,10 @@ public class SeleniumAspects {
   }
 
   private boolean isHardSessionLostException(Throwable cause, JoinPoint joinPoint) {
-    return
-        cause != null && !(cause instanceof UnhandledAlertException) &&
-            (
-                cause instanceof NoSuchSessionException ||
-                    StringUtils
-                        .equalsAnyIgnoreCase(joinPoint.getSignature().getName(), "get", "close",
-                            "quit")
-            );
+    return exceptionClassifier.isHardSessionLost(cause, joinPoint.getSignature().getName());
   }
 
   private boolean isSessionLostException(Throwable cause, JoinPoint joinPoint) {
-    return
-        cause != null &&
-            (
-                cause instanceof SessionLostException ||
-                    cause instanceof UnsupportedCommandException ||
-                    cause instanceof UnreachableBrowserException ||
-                    cause instanceof ConnectException ||
-//                                        cause instanceof NoSuchWindowException ||
-                    (cause instanceof TimeoutException && "getCurrentUrl"
-                        .equals(joinPoint.getSignature().getName())) ||
-                    StringUtils.containsAny(cause.getMessage(),
-                        "Session not started or terminated",
-                        "not reachable",
-                        "not connected to DevTools",
-                        "Unable to communicate to node",
-                        "Remote browser did not respond",
-                        "cannot get automation extension",
-                        "was terminated due to",
-                        "Connection refused",
-                        "not available and is not among the last 1000 terminated sessions",
-                        "session deleted because of page crash",
-                        "Java heap space",
-                        "unable to connect to renderer",
-                        "Address already in use")
-            );
+    return exceptionClassifier.isSessionLost(cause, joinPoint.getSignature().getName());
   }
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.aspects;
+
+import com.github.mishaninss.arma.exceptions.SessionLostException;
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.lang3.StringUtils;
+import org.openqa.selenium.NoAlertPresentException;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.NoSuchSessionException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.UnhandledAlertException;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.remote.UnreachableBrowserException;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides whether an exception thrown by a Selenium call means that the driver session has been
+ * lost. Exception type is checked first through a dispatch table; the message is only scanned for
+ * exceptions of undecided types, with a single precompiled multi-pattern matcher. Verdicts are
+ * cached per exception class and message prefix.
+ *
+ * @author Sergey Mishanin
+ */
+@Component
+public class SessionLostExceptionClassifier implements InitializingBean {
+
+  public static final String SIGNATURES_PROPERTY = "arma.driver.session.lost.signatures";
+
+  private static final int MESSAGE_PREFIX_LENGTH = 512;
+  private static final int MAX_CACHE_SIZE = 4096;
+  private static final String BUILD_INFO_MARKER = "\nBuild info:";
+
+  public enum Verdict {
+    SESSION_LOST, NOT_SESSION_LOST, CHECK_MESSAGE
+  }
+
+  @Value("${" + SIGNATURES_PROPERTY + ":}")
+  private List<String> customSignatures;
+
+  private final Set<String> hardSessionLostMethods = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+  private final Map<Class<?>, Verdict> typeVerdicts = new LinkedHashMap<>();
+  private final Set<String> signatures = new LinkedHashSet<>();
+  private final Map<Class<?>, Verdict> typeCache = new ConcurrentHashMap<>();
+  private final Map<String, Boolean> messageCache = new ConcurrentHashMap<>();
+  private volatile MultiPatternMatcher matcher;
+
+  public SessionLostExceptionClassifier() {
+    hardSessionLostMethods.addAll(Arrays.asList("get", "close", "quit"));
+
+    typeVerdicts.put(SessionLostException.class, Verdict.SESSION_LOST);
+    typeVerdicts.put(UnsupportedCommandException.class, Verdict.SESSION_LOST);
+    typeVerdicts.put(UnreachableBrowserException.class, Verdict.SESSION_LOST);
+    typeVerdicts.put(ConnectException.class, Verdict.SESSION_LOST);
+    typeVerdicts.put(NoSuchElementException.class, Verdict.NOT_SESSION_LOST);
+    typeVerdicts.put(StaleElementReferenceException.class, Verdict.NOT_SESSION_LOST);
+    typeVerdicts.put(NoAlertPresentException.class, Verdict.NOT_SESSION_LOST);
+    typeVerdicts.put(UnhandledAlertException.class, Verdict.NOT_SESSION_LOST);
+
+    signatures.addAll(Arrays.asList(
+        "Session not started or terminated",
+        "not reachable",
+        "not connected to DevTools",
+        "Unable to communicate to node",
+        "Remote browser did not respond",
+        "cannot get automation extension",
+        "was terminated due to",
+        "Connection refused",
+        "not available and is not among the last 1000 terminated sessions",
+        "session deleted because of page crash",
+        "Java heap space",
+        "unable to connect to renderer",
+        "Address already in use"));
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    if (customSignatures != null) {
+      customSignatures.stream()
+          .filter(StringUtils::isNotBlank)
+          .map(String::trim)
+          .forEach(signatures::add);
+    }
+    rebuild();
+  }
+
+  /**
+   * Hard session loss means that the session could not be closed gracefully
+   *
+   * @param cause      - exception thrown by a Selenium call
+   * @param methodName - name of the called Selenium method
+   */
+  public boolean isHardSessionLost(Throwable cause, String methodName) {
+    return cause != null && !(cause instanceof UnhandledAlertException)
+        && (cause instanceof NoSuchSessionException
+        || hardSessionLostMethods.contains(methodName));
+  }
+
+  /**
+   * @param cause      - exception thrown by a Selenium call
+   * @param methodName - name of the called Selenium method
+   */
+  public boolean isSessionLost(Throwable cause, String methodName) {
+    if (cause == null) {
+      return false;
+    }
+    switch (getTypeVerdict(cause.getClass())) {
+      case SESSION_LOST:
+        return true;
+      case NOT_SESSION_LOST:
+        return false;
+      default:
+        if (cause instanceof TimeoutException && "getCurrentUrl".equals(methodName)) {
+          return true;
+        }
+        return matchesSignature(cause);
+    }
+  }
+
+  /**
+   * Registers a message fragment which means that the session has been lost
+   */
+  public synchronized SessionLostExceptionClassifier addSignature(String signature) {
+    signatures.add(signature);
+    rebuild();
+    return this;
+  }
+
+  /**
+   * Registers a verdict for exceptions of the given type and its subtypes
+   */
+  public synchronized SessionLostExceptionClassifier addType(Class<? extends Throwable> type,
+      Verdict verdict) {
+    typeVerdicts.put(type, verdict);
+    rebuild();
+    return this;
+  }
+
+  /**
+   * Registers a Selenium method which failure means hard session loss
+   */
+  public synchronized SessionLostExceptionClassifier addHardSessionLostMethod(String methodName) {
+    hardSessionLostMethods.add(methodName);
+    return this;
+  }
+
+  private synchronized void rebuild() {
+    matcher = new MultiPatternMatcher(signatures);
+    typeCache.clear();
+    messageCache.clear();
+  }
+
+  private Verdict getTypeVerdict(Class<?> type) {
+    return typeCache.computeIfAbsent(type, this::resolveTypeVerdict);
+  }
+
+  private synchronized Verdict resolveTypeVerdict(Class<?> type) {
+    Verdict verdict = typeVerdicts.get(type);
+    if (verdict != null) {
+      return verdict;
+    }
+    return typeVerdicts.entrySet().stream()
+        .filter(entry -> entry.getKey().isAssignableFrom(type))
+        .map(Map.Entry::getValue)
+        .findFirst()
+        .orElse(Verdict.CHECK_MESSAGE);
+  }
+
+  private boolean matchesSignature(Throwable cause) {
+    String message = cause.getMessage();
+    if (message == null) {
+      return false;
+    }
+    String prefix = StringUtils.substringBefore(message, BUILD_INFO_MARKER);
+    if (prefix.length() > MESSAGE_PREFIX_LENGTH) {
+      return matcher.containsAny(message);
+    }
+    String key = cause.getClass().getName() + ':' + prefix;
+    Boolean matches = messageCache.get(key);
+    if (matches == null) {
+      matches = matcher.containsAny(message);
+      if (messageCache.size() >= MAX_CACHE_SIZE) {
+        messageCache.clear();
+      }
+      messageCache.put(key, matches);
+    }
+    return matches;
+  }
+}
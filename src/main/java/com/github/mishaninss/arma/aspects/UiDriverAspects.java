@@ -20,17 +20,13 @@ import com.github.mishaninss.arma.uidriver.WindowsManager;
 import com.github.mishaninss.arma.uidriver.interfaces.ILocatable;
 import com.github.mishaninss.arma.uidriver.interfaces.IWaitingDriver;
 import com.github.mishaninss.arma.uidriver.webdriver.WebElementProvider;
-import com.github.mishaninss.arma.utils.GenericUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
-import org.openqa.selenium.InvalidElementStateException;
 import org.openqa.selenium.NoSuchWindowException;
-import org.openqa.selenium.StaleElementReferenceException;
 import org.openqa.selenium.TimeoutException;
-import org.openqa.selenium.WebDriverException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -84,37 +80,53 @@ public class UiDriverAspects {
   public Object adviceAroundIElementDriverMethod(ProceedingJoinPoint joinPoint) throws Throwable {
     LOGGER.trace("call [{}.{}]", joinPoint.getSignature().getDeclaringTypeName(),
         joinPoint.getSignature().getName());
-    try {
-      return joinPoint.proceed();
-    } catch (StaleElementReferenceException ex) {
-      LOGGER.trace("StaleElementReferenceException", ex);
-      applicationContext.getBean(WebElementProvider.class).clearCache();
-      return joinPoint.proceed();
-    } catch (InvalidElementStateException ex) {
-      LOGGER.trace("InvalidElementStateException", ex);
-      applicationContext.getBean(WebElementProvider.class).clearCache();
-      applicationContext.getBean(IWaitingDriver.QUALIFIER, IWaitingDriver.class)
-          .waitForPageUpdate();
-      return joinPoint.proceed();
-    } catch (TimeoutException ex) {
-      if (StringUtils.contains(ex.getMessage(), "Timed out receiving message from renderer")) {
-        LOGGER.trace("TimeoutException", ex);
-        return null;
-      } else {
-        throw ex;
-      }
-    } catch (WebDriverException ex) {
-      if (StringUtils.contains(ex.getMessage(), "Could not find node with given id")) {
-        LOGGER.debug("WebDriverException", ex);
-        applicationContext.getBean(WebElementProvider.class).clearCache();
-        GenericUtils.pause(1);
-        applicationContext.getBean(IWaitingDriver.QUALIFIER, IWaitingDriver.class)
-            .waitForPageUpdate();
+    int attempt = 0;
+    while (true) {
+      try {
         return joinPoint.proceed();
-      } else {
+      } catch (TimeoutException ex) {
+        if (StringUtils.contains(ex.getMessage(), "Timed out receiving message from renderer")) {
+          LOGGER.trace("TimeoutException", ex);
+          return null;
+        }
+        attempt = prepareRetry(ex, attempt);
+      } catch (Exception ex) {
+        attempt = prepareRetry(ex, attempt);
+      }
+    }
+  }
+
+  /**
+   * Finds a retry policy for the exception and performs recovery actions of the policy
+   *
+   * @return number of the next attempt
+   * @throws Exception the original exception, if there is no matching policy or attempts are
+   *                   exhausted
+   */
+  private int prepareRetry(Exception ex, int attempt) throws Exception {
+    RetryPolicy policy = applicationContext.getBean(RetryPolicies.class).findPolicy(ex);
+    if (policy == null || attempt >= policy.getMaxAttempts()) {
+      throw ex;
+    }
+    int nextAttempt = attempt + 1;
+    LOGGER.trace("Retry [{}] attempt {} of {}", policy, nextAttempt, policy.getMaxAttempts(), ex);
+    if (policy.shouldClearCache()) {
+      applicationContext.getBean(WebElementProvider.class).clearCache();
+    }
+    long backoff = policy.getBackoff(nextAttempt);
+    if (backoff > 0) {
+      try {
+        Thread.sleep(backoff);
+      } catch (InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
         throw ex;
       }
     }
+    if (policy.shouldWaitForPageUpdate()) {
+      applicationContext.getBean(IWaitingDriver.QUALIFIER, IWaitingDriver.class)
+          .waitForPageUpdate();
+    }
+    return nextAttempt;
   }
 
   @Around("topFindElementExecutionExecution()")
@@ -2,16 +2,40 @@ package com.github.mishaninss.arma.aspects;
 
 import org.apache.commons.lang3.StringUtils;
 import org.openqa.selenium.NoSuchElementException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import com.github.mishaninss.arma.exceptions.InteractionException;
 import com.github.mishaninss.arma.exceptions.SessionLostException;
 import com.github.mishaninss.arma.html.interfaces.IInteractiveElement;
 import com.github.mishaninss.arma.html.interfaces.INamed;
+import com.github.mishaninss.arma.uidriver.webdriver.IWdScreenshoter;
+import com.github.mishaninss.arma.uidriver.webdriver.ScreenshotOptions;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Component
 public class WebdriverInteractiveElementExceptionBuilder extends DefaultIInteractiveExceptionBuilderImpl {
+    public static final String SCREENSHOT_FORMAT_PROPERTY = "arma.report.screenshot.format";
+    public static final String SCREENSHOT_QUALITY_PROPERTY = "arma.report.screenshot.quality";
+    public static final String SCREENSHOT_SCALE_PROPERTY = "arma.report.screenshot.scale";
+    public static final String SCREENSHOT_TIMEOUT_PROPERTY = "arma.report.screenshot.timeout";
+
+    @Value("${" + SCREENSHOT_FORMAT_PROPERTY + ":png}")
+    private String screenshotFormat;
+    @Value("${" + SCREENSHOT_QUALITY_PROPERTY + ":80}")
+    private int screenshotQuality;
+    @Value("${" + SCREENSHOT_SCALE_PROPERTY + ":1}")
+    private double screenshotScale;
+    @Value("${" + SCREENSHOT_TIMEOUT_PROPERTY + ":5000}")
+    private long screenshotTimeout;
+    @Autowired
+    private IWdScreenshoter screenshoter;
+
     @Override
     public RuntimeException buildException(IInteractiveElement element, String action, Exception ex) {
         Throwable cause = ex;
@@ -41,15 +65,52 @@ public class WebdriverInteractiveElementExceptionBuilder extends DefaultIInterac
             return clearStacktrace(new SessionLostException(sb.toString(), cause));
         } else {
             if (browserDriver.isBrowserStarted()) {
-                reporter.attachScreenshot(pageDriver.takeScreenshot());
+                // the screenshot is decoded in the background while the rest of the page state is read
+                CompletableFuture<byte[]> screenshot = screenshoter.takeScreenshotAsync(getScreenshotOptions());
+                String browserLogs = null;
                 if (properties.driver().areConsoleLogsEnabled()) {
-                    reporter.attachText(StringUtils.join(browserDriver.getLogEntries("browser"), "\n"), "Browser logs");
+                    browserLogs = StringUtils.join(browserDriver.getLogEntries("browser"), "\n");
                 }
                 sb.append("\nURL: ").append(pageDriver.getCurrentUrl());
                 sb.append("\nЗаголовок страницы: ").append(pageDriver.getPageTitle());
+                byte[] image = awaitScreenshot(screenshot);
+                if (image != null) {
+                    reporter.attachScreenshot(image);
+                }
+                if (browserLogs != null) {
+                    reporter.attachText(browserLogs, "Browser logs");
+                }
             }
 
             return clearStacktrace(new InteractionException(sb.toString(), cause));
         }
     }
+
+    /**
+     * Waits for the screenshot no longer than the timeout, so a slow or failed conversion doesn't
+     * stall the failure
+     *
+     * @return the screenshot, or null if it has failed or is not ready in time
+     */
+    private byte[] awaitScreenshot(CompletableFuture<byte[]> screenshot) {
+        try {
+            return screenshot.get(screenshotTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException ex) {
+            reporter.debug("Screenshot has not been attached", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Screenshots attached to the report may be taken as small lossy images
+     */
+    private ScreenshotOptions getScreenshotOptions() {
+        return ScreenshotOptions.png()
+                .format(ScreenshotOptions.Format.of(screenshotFormat))
+                .quality(screenshotQuality)
+                .scale(screenshotScale);
+    }
 }
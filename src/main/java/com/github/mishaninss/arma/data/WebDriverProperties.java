@@ -1,5 +1,7 @@
 package com.github.mishaninss.arma.data;
 
+import java.util.HashMap;
+import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -54,6 +56,11 @@ public class WebDriverProperties {
         public static final String NETWORK_CONDITIONS = "arma.driver.network.conditions";
         public static final String UNEXPECTED_ALERT_BEHAVIOUR = "arma.driver.unexpected.alert.behaviour";
         public static final String COLLECT_NETWORK_LOGS = "arma.driver.collect.network.logs";
+        public static final String TIMEOUTS_HTTP_CLIENT = "arma.driver.timeouts.http.client";
+        public static final String TIMEOUTS_CONNECT = "arma.driver.timeouts.connect";
+        public static final String TIMEOUTS_COMMANDS = "arma.driver.timeouts.commands";
+        public static final String TIMEOUTS_SESSION_QUIT = "arma.driver.timeouts.session.quit";
+        public static final String SESSIONS_PARALLELISM = "arma.driver.sessions.parallelism";
 
         @Value("${" + COLLECT_NETWORK_LOGS + ":false}")
         public boolean collectNetworkLogs;
@@ -88,6 +95,35 @@ public class WebDriverProperties {
         @Value("${" + UNEXPECTED_ALERT_BEHAVIOUR + ":}")
         public String unexpectedAlertBehaviour;
 
+        /**
+         * Enforce driver operation timeouts by the HTTP client of the command executor. Only the
+         * Chrome command executors support it; other drivers are bound by the driver operation
+         * timeout alone
+         */
+        @Value("${" + TIMEOUTS_HTTP_CLIENT + ":true}")
+        public boolean timeoutsHttpClient;
+
+        @Value("${" + TIMEOUTS_CONNECT + ":10000}")
+        public long timeoutsConnect;
+
+        /**
+         * Per-command read timeouts in milliseconds, e.g. "get=120000,findElement=10000"
+         */
+        @Value("${" + TIMEOUTS_COMMANDS + ":}")
+        public String timeoutsCommands;
+
+        /**
+         * Time in milliseconds given to a session to quit, before it is abandoned
+         */
+        @Value("${" + TIMEOUTS_SESSION_QUIT + ":30000}")
+        public long timeoutsSessionQuit;
+
+        /**
+         * Max number of named sessions started or closed at the same time
+         */
+        @Value("${" + SESSIONS_PARALLELISM + ":4}")
+        public int sessionsParallelism;
+
         public boolean shouldCollectPerfLogs() {
             return collectTracingLogs || collectNetworkLogs;
         }
@@ -96,6 +132,22 @@ public class WebDriverProperties {
             return StringUtils.isNoneBlank(gridUrl);
         }
 
+        public boolean useHttpClientTimeouts() {
+            return timeoutsHttpClient && timeoutsDriverOperation > 0;
+        }
+
+        public Map<String, Long> getCommandTimeouts() {
+            Map<String, Long> timeouts = new HashMap<>();
+            for (String timeout : StringUtils.split(StringUtils.defaultString(timeoutsCommands), ',')) {
+                String name = StringUtils.substringBefore(timeout, "=").trim();
+                String value = StringUtils.substringAfter(timeout, "=").trim();
+                if (StringUtils.isNoneBlank(name) && StringUtils.isNumeric(value)) {
+                    timeouts.put(name, Long.parseLong(value));
+                }
+            }
+            return timeouts;
+        }
+
         public NetworkConditions getNetworkConditions() {
             if (StringUtils.isNoneBlank(networkConditions)) {
                 try {
@@ -24,7 +24,11 @@ import java.io.FileInputStream;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 import static com.github.mishaninss.arma.data.DataObject.GSON;
@@ -71,7 +75,7 @@ public class DesiredCapabilitiesLoader {
         return new DesiredCapabilities();
     }
 
-    private @NonNull
+    public @NonNull
     File getCapabilitiesFile(@NonNull String capabilitiesFilePath) {
         URL resource = DesiredCapabilities.class.getResource(capabilitiesFilePath);
         if (resource != null) {
@@ -86,7 +90,9 @@ public class DesiredCapabilitiesLoader {
         try {
             Properties props = new Properties();
             MutableCapabilities capabilities = capabilitiesClass.newInstance();
-            props.load(new FileInputStream(capabilitiesFile));
+            try (FileInputStream inputStream = new FileInputStream(capabilitiesFile)) {
+                props.load(inputStream);
+            }
             props.forEach((key, value) -> capabilities.setCapability(key.toString(), value));
             reporter.debug("Desired capabilities loaded from file [%s]:\n%s", capabilitiesFile, GSON.toJson(capabilities.asMap()));
             return capabilities;
@@ -118,20 +124,24 @@ public class DesiredCapabilitiesLoader {
     }
 
     public Capabilities loadEnvironmentProperties(String prefix, Class<? extends MutableCapabilities> capabilitiesClass) {
+        return loadEnvironmentProperties(findEnvironmentPropertyNames(prefix), prefix, capabilitiesClass);
+    }
+
+    /**
+     * Loads capabilities from the given Environment properties which start with the prefix
+     *
+     * @param propertyNames - names found by {@link #findEnvironmentPropertyNames(String...)}
+     */
+    public Capabilities loadEnvironmentProperties(Collection<String> propertyNames, String prefix,
+                                                  Class<? extends MutableCapabilities> capabilitiesClass) {
         try {
             MutableCapabilities capabilities = capabilitiesClass.newInstance();
-            Properties props = properties.getEnvironmentProperties(prefix);
-            MutablePropertySources propSrcs = ((AbstractEnvironment) environment).getPropertySources();
-            StreamSupport.stream(propSrcs.spliterator(), false)
-                    .filter(ps -> ps instanceof EnumerablePropertySource)
-                    .map(ps -> ((EnumerablePropertySource) ps).getPropertyNames())
-                    .flatMap(Arrays::<String>stream)
-                    .forEach(propName -> {
-                                if (propName.startsWith(prefix)) {
-                                    capabilities.setCapability(StringUtils.substringAfter(propName, prefix), environment.getProperty(propName));
-                                }
-                            }
-                    );
+            propertyNames.forEach(propName -> {
+                        if (propName.startsWith(prefix)) {
+                            capabilities.setCapability(StringUtils.substringAfter(propName, prefix), environment.getProperty(propName));
+                        }
+                    }
+            );
             reporter.debug("Desired capabilities loaded from Environment properties with prefix [%s]:\n%s", prefix, GSON.toJson(capabilities.asMap()));
             return capabilities;
         } catch (Exception ex) {
@@ -139,4 +149,18 @@ public class DesiredCapabilitiesLoader {
             return null;
         }
     }
+
+    /**
+     * Finds names of the Environment properties which start with any of the prefixes in a single
+     * scan of the property sources
+     */
+    public Set<String> findEnvironmentPropertyNames(String... prefixes) {
+        MutablePropertySources propSrcs = ((AbstractEnvironment) environment).getPropertySources();
+        return StreamSupport.stream(propSrcs.spliterator(), false)
+                .filter(ps -> ps instanceof EnumerablePropertySource)
+                .map(ps -> ((EnumerablePropertySource<?>) ps).getPropertyNames())
+                .flatMap(Arrays::<String>stream)
+                .filter(propName -> StringUtils.startsWithAny(propName, prefixes))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
 }
\ No newline at end of file
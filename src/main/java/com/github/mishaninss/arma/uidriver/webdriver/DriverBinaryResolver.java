@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver;
+
+import com.github.mishaninss.arma.exceptions.FrameworkConfigurationException;
+import com.github.mishaninss.arma.reporting.IReporter;
+import com.github.mishaninss.arma.reporting.Reporter;
+import io.github.bonigarcia.wdm.WebDriverManager;
+import io.github.bonigarcia.wdm.config.DriverManagerType;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.lang3.StringUtils;
+import org.openqa.selenium.chrome.ChromeDriverService;
+import org.openqa.selenium.firefox.GeckoDriverService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Makes a driver binary available to Selenium before a local session start. WebDriverManager
+ * resolution is done once per driver type for the whole JVM. If a binary path is configured, it is
+ * used as is and WebDriverManager is not called at all, which suits offline environments.
+ *
+ * @author Sergey Mishanin
+ */
+@Component
+public class DriverBinaryResolver {
+
+  public static final String CHROME_DRIVER_BINARY_PROPERTY = "arma.driver.binary.chrome";
+  public static final String FIREFOX_DRIVER_BINARY_PROPERTY = "arma.driver.binary.firefox";
+
+  private static final Map<DriverManagerType, String> RESOLVED_BINARIES = new ConcurrentHashMap<>();
+
+  @Value("${" + CHROME_DRIVER_BINARY_PROPERTY + ":}")
+  private String chromeDriverBinary;
+  @Value("${" + FIREFOX_DRIVER_BINARY_PROPERTY + ":}")
+  private String firefoxDriverBinary;
+  @Reporter
+  private IReporter reporter;
+
+  /**
+   * Resolves the driver binary of the given type and publishes its path through the system
+   * property Selenium reads it from
+   *
+   * @return path to the driver binary
+   */
+  public String resolve(DriverManagerType type) {
+    String configuredBinary = getConfiguredBinary(type);
+    if (StringUtils.isNotBlank(configuredBinary)) {
+      if (!new File(configuredBinary).isFile()) {
+        throw new FrameworkConfigurationException("Configured driver binary is not available",
+            new FileNotFoundException(configuredBinary));
+      }
+      String driverProperty = getDriverProperty(type);
+      if (driverProperty != null) {
+        System.setProperty(driverProperty, configuredBinary);
+      }
+      return configuredBinary;
+    }
+    //a failed or empty resolution is not cached, so it is retried by the next session start
+    return StringUtils.defaultString(RESOLVED_BINARIES.computeIfAbsent(type, this::setup));
+  }
+
+  /**
+   * Forgets the resolved binaries, so the next session start resolves them again
+   */
+  public static void clearCache() {
+    RESOLVED_BINARIES.clear();
+  }
+
+  /**
+   * @return path to the driver binary, or null if WebDriverManager has not provided one
+   */
+  private String setup(DriverManagerType type) {
+    long start = System.currentTimeMillis();
+    WebDriverManager driverManager = WebDriverManager.getInstance(type);
+    driverManager.setup();
+    String path = driverManager.getDownloadedDriverPath();
+    reporter.debug("Resolved %s driver binary [%s] in %d ms", type, path,
+        System.currentTimeMillis() - start);
+    return StringUtils.isNotBlank(path) ? path : null;
+  }
+
+  private String getConfiguredBinary(DriverManagerType type) {
+    switch (type) {
+      case CHROME:
+        return chromeDriverBinary;
+      case FIREFOX:
+        return firefoxDriverBinary;
+      default:
+        return null;
+    }
+  }
+
+  private static String getDriverProperty(DriverManagerType type) {
+    switch (type) {
+      case CHROME:
+        return ChromeDriverService.CHROME_DRIVER_EXE_PROPERTY;
+      case FIREFOX:
+        return GeckoDriverService.GECKO_DRIVER_EXE_PROPERTY;
+      default:
+        return null;
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver;
+
+import com.github.mishaninss.arma.uidriver.interfaces.IScreenshoter;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Screenshoter which accepts capture options. Without a clip, options apply to the same area as a
+ * plain {@link #takeScreenshot()}: the whole page in Chrome, the viewport in other browsers. A
+ * clip is always given in CSS pixels relative to the document, e.g. a rectangle of
+ * {@link org.openqa.selenium.WebElement#getRect()}. Browsers which capture the viewport only
+ * scroll the clip into view and cut it to the viewport.
+ *
+ * @author Sergey Mishanin
+ */
+public interface IWdScreenshoter extends IScreenshoter {
+
+  /**
+   * Takes a screenshot with the given options
+   *
+   * @return encoded image, or an empty array if the screenshot could not be taken
+   */
+  byte[] takeScreenshot(ScreenshotOptions options);
+
+  /**
+   * Takes a screenshot with the given options
+   *
+   * @return Base64 encoded image, or an empty string if the screenshot could not be taken
+   */
+  String takeScreenshotAsBase64(ScreenshotOptions options);
+
+  /**
+   * Grabs a screenshot on the calling thread and leaves decoding and conversion to the
+   * {@link ScreenshotPipeline}
+   *
+   * @return future encoded image, an empty array if the screenshot could not be taken
+   */
+  CompletableFuture<byte[]> takeScreenshotAsync(ScreenshotOptions options);
+}
@@ -16,6 +16,7 @@
 
 package com.github.mishaninss.arma.uidriver.webdriver;
 
+import java.util.Map;
 import java.util.Set;
 import org.openqa.selenium.Dimension;
 import org.openqa.selenium.WebDriver;
@@ -46,6 +47,49 @@ public interface IWebDriverFactory {
 
   void closeAllSessions();
 
+  /**
+   * Returns the name of the session bound to the current thread, or the name of the current
+   * session if no session is bound
+   *
+   * @throws UnsupportedOperationException if the factory doesn't track session names
+   */
+  default String getCurrentSessionName() {
+    throw new UnsupportedOperationException(
+        "Session names are not supported by " + getClass().getName());
+  }
+
+  /**
+   * Starts the given named sessions in parallel and waits for all of them. Already started
+   * sessions are left as they are. By default the sessions are started one by one.
+   */
+  default void openSessions(String... sessionNames) {
+    for (String sessionName : sessionNames) {
+      runInSession(sessionName, this::getDriver);
+    }
+  }
+
+  /**
+   * Binds the given session to the current thread while the action runs. All the driver calls
+   * made by the action are addressed to this session
+   *
+   * @throws UnsupportedOperationException if the factory doesn't support binding of sessions
+   */
+  default void runInSession(String sessionName, Runnable action) {
+    throw new UnsupportedOperationException(
+        "Binding of sessions to threads is not supported by " + getClass().getName());
+  }
+
+  /**
+   * Runs the actions concurrently, each one on its own thread bound to its session, and waits
+   * for all of them. The first failure is rethrown with the others added as suppressed. By
+   * default the actions run one by one on the calling thread, and the first failure stops them.
+   *
+   * @param actions - actions by session name
+   */
+  default void runInSessions(Map<String, Runnable> actions) {
+    actions.forEach(this::runInSession);
+  }
+
   /**
    * Closes a browser and nulls WebDriver instance
    */
@@ -53,6 +97,22 @@ public interface IWebDriverFactory {
 
   void hardCloseDriver();
 
+  /**
+   * Brings the current browser session to a clean state without restarting the browser: closes
+   * extra windows, clears cookies, storages and cache and navigates to about:blank.
+   *
+   * <p>Storages are cleared only for the origins the resetter can find. In Chrome these are the
+   * origins of open pages, frames and workers and of the navigation history of the current page.
+   * Other browsers clear only the current origin. Storages of other origins visited by the
+   * scenario survive the reset, so a scenario which needs full isolation should not reuse a
+   * session.
+   *
+   * <p>By default the session is closed, so the next access starts a new one.
+   */
+  default void resetSession() {
+    closeDriver();
+  }
+
   /**
    * Determines if browser is already started
    */
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver;
+
+import org.openqa.selenium.Rectangle;
+
+/**
+ * Capture options of a screenshot: image format, quality of lossy formats, scale factor and clip
+ * rectangle. Default options give a full-size PNG of the whole capture.
+ *
+ * @author Sergey Mishanin
+ */
+public class ScreenshotOptions {
+
+  public enum Format {
+    PNG("png", ".png"), JPEG("jpeg", ".jpg"), WEBP("webp", ".webp");
+
+    private final String name;
+    private final String extension;
+
+    Format(String name, String extension) {
+      this.name = name;
+      this.extension = extension;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return file name extension of the format, with the leading dot
+     */
+    public String getExtension() {
+      return extension;
+    }
+
+    public boolean isLossy() {
+      return this != PNG;
+    }
+
+    public static Format of(String name) {
+      for (Format format : values()) {
+        if (format.name.equalsIgnoreCase(name) || format.name().equalsIgnoreCase(name)) {
+          return format;
+        }
+      }
+      if ("jpg".equalsIgnoreCase(name)) {
+        return JPEG;
+      }
+      throw new IllegalArgumentException("Unsupported screenshot format " + name);
+    }
+  }
+
+  private Format format = Format.PNG;
+  private int quality = 100;
+  private double scale = 1;
+  private Rectangle clip;
+
+  public static ScreenshotOptions png() {
+    return new ScreenshotOptions();
+  }
+
+  public static ScreenshotOptions jpeg(int quality) {
+    return new ScreenshotOptions().format(Format.JPEG).quality(quality);
+  }
+
+  public ScreenshotOptions format(Format format) {
+    this.format = format;
+    return this;
+  }
+
+  /**
+   * @param quality - compression quality of lossy formats from 0 to 100
+   */
+  public ScreenshotOptions quality(int quality) {
+    this.quality = Math.max(0, Math.min(100, quality));
+    return this;
+  }
+
+  /**
+   * @param scale - scale factor of the image, e.g. 0.5 for a half-size image
+   */
+  public ScreenshotOptions scale(double scale) {
+    if (scale <= 0) {
+      throw new IllegalArgumentException("Scale factor should be positive: " + scale);
+    }
+    this.scale = scale;
+    return this;
+  }
+
+  /**
+   * @param clip - area of the page to capture, in CSS pixels relative to the document
+   */
+  public ScreenshotOptions clip(Rectangle clip) {
+    this.clip = clip;
+    return this;
+  }
+
+  public Format getFormat() {
+    return format;
+  }
+
+  public int getQuality() {
+    return quality;
+  }
+
+  public double getScale() {
+    return scale;
+  }
+
+  public Rectangle getClip() {
+    return clip;
+  }
+
+  /**
+   * Determines if the options give the same image as a plain screenshot
+   */
+  public boolean isDefault() {
+    return format == Format.PNG && scale == 1 && clip == null;
+  }
+
+  @Override
+  public String toString() {
+    return format.getName() + (format.isLossy() ? " q" + quality : "") + " x" + scale
+        + (clip != null ? " clip " + clip.getX() + "," + clip.getY() + " " + clip.getWidth() + "x"
+        + clip.getHeight() : "");
+  }
+}
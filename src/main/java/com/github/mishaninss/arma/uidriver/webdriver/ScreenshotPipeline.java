@@ -0,0 +1,272 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver;
+
+import com.github.mishaninss.arma.reporting.IReporter;
+import com.github.mishaninss.arma.reporting.Reporter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decodes, converts and writes screenshots in the background, so a test thread only grabs the raw
+ * payload from the browser. The executor is bounded: when its queue is full, a task runs on the
+ * submitting thread.
+ *
+ * @author Sergey Mishanin
+ */
+@Component
+public class ScreenshotPipeline implements InitializingBean, DisposableBean {
+
+  public static final String THREADS_PROPERTY = "arma.screenshot.pipeline.threads";
+  public static final String QUEUE_SIZE_PROPERTY = "arma.screenshot.pipeline.queue";
+  /**
+   * Name stored screenshots after the SHA-256 of their content, so an identical image is stored
+   * once. Such screenshots are stored in the {@link #HASH_DIR} subdirectory instead of the
+   * timestamped files in the screenshots directory itself
+   */
+  public static final String DEDUPLICATION_PROPERTY = "arma.screenshot.store.dedup";
+  /**
+   * Content-addressed subdirectory of deduplicated screenshots
+   */
+  public static final String HASH_DIR = "by-hash";
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+  /**
+   * Must be a multiple of 4, so every chunk but the last one is decoded without padding
+   */
+  private static final int BASE64_CHUNK_SIZE = 64 * 1024;
+
+  @Value("${" + THREADS_PROPERTY + ":2}")
+  private int threads;
+  @Value("${" + QUEUE_SIZE_PROPERTY + ":16}")
+  private int queueSize;
+  @Value("${" + DEDUPLICATION_PROPERTY + ":true}")
+  private boolean deduplication;
+  @Reporter
+  private IReporter reporter;
+
+  private ThreadPoolExecutor executor;
+
+  @Override
+  public void afterPropertiesSet() {
+    AtomicInteger threadNumber = new AtomicInteger();
+    int poolSize = Math.max(1, threads);
+    executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+        runnable -> {
+          Thread thread = new Thread(runnable, "arma-screenshot-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        },
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Waits for pending screenshots to be written before the context is closed
+   */
+  @Override
+  public void destroy() throws InterruptedException {
+    executor.shutdown();
+    if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+      reporter.warn("Screenshot pipeline has not finished in [%d] s", SHUTDOWN_TIMEOUT_SECONDS);
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Runs the task on the pipeline. The future is completed whatever the task throws, errors
+   * included, so a caller waiting for it is never left hanging
+   */
+  public <T> CompletableFuture<T> submit(Callable<T> task) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    executor.execute(() -> {
+      try {
+        result.complete(task.call());
+      } catch (Throwable ex) {
+        result.completeExceptionally(ex);
+        if (ex instanceof Error) {
+          throw (Error) ex;
+        }
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Decodes a Base64 image in the background
+   */
+  public CompletableFuture<byte[]> decode(String base64) {
+    return submit(() -> base64 == null ? new byte[0] : Base64.getDecoder().decode(base64));
+  }
+
+  /**
+   * Decodes a Base64 image and writes it to the file in the background
+   */
+  public CompletableFuture<File> writeToFile(String base64, File file) {
+    return submit(() -> {
+      writeBase64(base64, file);
+      return file;
+    });
+  }
+
+  /**
+   * Decodes a Base64 image and stores it to the directory in the background
+   *
+   * @see #store(ImageSource, ScreenshotOptions.Format, File, String)
+   */
+  public CompletableFuture<File> storeAsync(String base64, ScreenshotOptions.Format format,
+      File dir, String name) {
+    return submit(() -> store(base64, format, dir, name));
+  }
+
+  /**
+   * Decodes a Base64 image and stores it to the directory
+   *
+   * @see #store(ImageSource, ScreenshotOptions.Format, File, String)
+   */
+  public File store(String base64, ScreenshotOptions.Format format, File dir, String name)
+      throws IOException {
+    return store(out -> writeBase64(base64, Channels.newChannel(out)), format, dir, name);
+  }
+
+  /**
+   * Stores an image to the directory. With deduplication the file is stored in the
+   * {@link #HASH_DIR} subdirectory, named after the SHA-256 of the image with the extension of the
+   * format; the hash is computed while the image is written to a temporary file, and the image is
+   * not stored again if the subdirectory already has it. Otherwise the file gets the given name.
+   *
+   * @param format - format the image is encoded in
+   * @return stored file
+   */
+  public File store(ImageSource image, ScreenshotOptions.Format format, File dir, String name)
+      throws IOException {
+    Files.createDirectories(dir.toPath());
+    if (!deduplication) {
+      File file = new File(dir, name);
+      try (OutputStream out = Files.newOutputStream(file.toPath())) {
+        image.writeTo(out);
+      }
+      return file;
+    }
+    Path hashDir = Files.createDirectories(dir.toPath().resolve(HASH_DIR));
+    Path tempFile = Files.createTempFile(hashDir, name, ".tmp");
+    try {
+      MessageDigest digest = newDigest();
+      try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tempFile), digest)) {
+        image.writeTo(out);
+      }
+      Path file = hashDir.resolve(toHex(digest.digest()) + format.getExtension());
+      if (!Files.exists(file)) {
+        try {
+          Files.move(tempFile, file);
+        } catch (FileAlreadyExistsException ex) {
+          // stored by a concurrent writer
+        }
+      }
+      return file.toFile();
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM);
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(DIGEST_ALGORITHM + " is not supported", ex);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Decodes a Base64 image straight into the file chunk by chunk, so no decoded copy of the whole
+   * image is kept in memory
+   */
+  public static void writeBase64(CharSequence base64, File file) throws IOException {
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (dir != null) {
+      Files.createDirectories(dir.toPath());
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      writeBase64(base64, channel);
+    }
+  }
+
+  /**
+   * Decodes a Base64 image into the channel chunk by chunk. The channel is left open
+   */
+  public static void writeBase64(CharSequence base64, WritableByteChannel channel)
+      throws IOException {
+    Base64.Decoder decoder = Base64.getDecoder();
+    int length = base64 == null ? 0 : base64.length();
+    byte[] chunk = new byte[Math.min(length, BASE64_CHUNK_SIZE)];
+    for (int start = 0; start < length; start += BASE64_CHUNK_SIZE) {
+      int size = Math.min(BASE64_CHUNK_SIZE, length - start);
+      for (int i = 0; i < size; i++) {
+        chunk[i] = (byte) base64.charAt(start + i);
+      }
+      ByteBuffer decoded = decoder.decode(ByteBuffer.wrap(chunk, 0, size));
+      while (decoded.hasRemaining()) {
+        channel.write(decoded);
+      }
+    }
+  }
+
+  /**
+   * Writes an encoded image, e.g. straight from the browser, without holding it in memory
+   */
+  @FunctionalInterface
+  public interface ImageSource {
+
+    /**
+     * Writes the image to the stream. The stream is closed by the caller
+     */
+    void writeTo(OutputStream out) throws IOException;
+  }
+}
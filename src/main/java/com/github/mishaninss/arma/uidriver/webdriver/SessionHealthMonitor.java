@@ -0,0 +1,260 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver;
+
+import com.github.mishaninss.arma.aspects.SeleniumAspects;
+import com.github.mishaninss.arma.reporting.IReporter;
+import com.github.mishaninss.arma.reporting.Reporter;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openqa.selenium.WebDriver;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pings active and pooled browser sessions in the background and marks the ones which are dead or
+ * hung, so a scenario fails fast instead of spending its own timeouts on a crashed browser. A
+ * leased session is marked dead after a number of failed checks in a row, as a check could also
+ * wait behind a long command of the scenario. Monitor is disabled if the check interval is 0.
+ *
+ * <p>A session has at most one ping in flight: a session whose previous ping still hangs is not
+ * pinged again and counts as failed, so ping threads are bounded by the number of checked
+ * sessions. A leased session found dead is quit in the background to free its browser or grid
+ * slot.
+ *
+ * <p>Checked sessions are not current sessions of the monitor threads, so the Selenium calls of a
+ * check round, including quits of dead pooled sessions done by the pool, are not handled by
+ * {@link SeleniumAspects}.
+ *
+ * @author Sergey Mishanin
+ */
+@Component
+public class SessionHealthMonitor implements InitializingBean, DisposableBean {
+
+  public static final String INTERVAL_PROPERTY = "arma.driver.health.check.interval";
+  public static final String TIMEOUT_PROPERTY = "arma.driver.health.check.timeout";
+  public static final String FAILURES_PROPERTY = "arma.driver.health.check.failures";
+
+  @Value("${" + INTERVAL_PROPERTY + ":0}")
+  private long interval;
+  @Value("${" + TIMEOUT_PROPERTY + ":10000}")
+  private long timeout;
+  @Value("${" + FAILURES_PROPERTY + ":2}")
+  private int failuresThreshold;
+  @Autowired
+  private WebDriverSessionPool sessionPool;
+  @Reporter
+  private IReporter reporter;
+
+  private final Map<WebDriver, AtomicInteger> watchedDrivers = new ConcurrentHashMap<>();
+  private final Set<WebDriver> deadDrivers = ConcurrentHashMap.newKeySet();
+  /**
+   * Sessions whose ping thread has not returned yet, even if the ping has timed out
+   */
+  private final Set<WebDriver> pingingDrivers = ConcurrentHashMap.newKeySet();
+  private ScheduledExecutorService scheduler;
+  private ThreadPoolExecutor pinger;
+
+  @Override
+  public void afterPropertiesSet() {
+    if (isEnabled()) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "arma-health-monitor");
+        thread.setDaemon(true);
+        return thread;
+      });
+      AtomicInteger threadNumber = new AtomicInteger();
+      pinger = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+          runnable -> {
+            Thread thread = new Thread(runnable, "arma-health-ping-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+      pinger.allowCoreThreadTimeOut(true);
+      scheduler.scheduleWithFixedDelay(() -> SeleniumAspects.runUnguarded(this::checkSessions),
+          interval, interval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      pinger.shutdownNow();
+    }
+  }
+
+  public boolean isEnabled() {
+    return interval > 0;
+  }
+
+  /**
+   * Starts checking of the given session
+   */
+  public void watch(WebDriver driver) {
+    if (isEnabled()) {
+      watchedDrivers.putIfAbsent(driver, new AtomicInteger());
+    }
+  }
+
+  /**
+   * Stops checking of the given session
+   */
+  public void unwatch(WebDriver driver) {
+    watchedDrivers.remove(driver);
+    deadDrivers.remove(driver);
+  }
+
+  /**
+   * Determines if the session has been found dead and should be replaced
+   */
+  public boolean isDead(WebDriver driver) {
+    return deadDrivers.contains(driver);
+  }
+
+  private void checkSessions() {
+    try {
+      Set<WebDriver> drivers = Collections.newSetFromMap(new IdentityHashMap<>());
+      watchedDrivers.keySet().stream()
+          .filter(driver -> !deadDrivers.contains(driver))
+          .forEach(drivers::add);
+      drivers.addAll(sessionPool.getIdleDrivers());
+      //hung pings of sessions which are not checked anymore still hold their threads
+      Set<WebDriver> busyDrivers = Collections.newSetFromMap(new IdentityHashMap<>());
+      busyDrivers.addAll(drivers);
+      busyDrivers.addAll(pingingDrivers);
+      resizePinger(busyDrivers.size());
+      Map<WebDriver, Future<Boolean>> pings = new IdentityHashMap<>();
+      drivers.forEach(driver -> pings.put(driver, ping(driver)));
+
+      long deadline = System.currentTimeMillis() + timeout;
+      Set<WebDriver> deadIdleDrivers = new HashSet<>();
+      for (Map.Entry<WebDriver, Future<Boolean>> ping : pings.entrySet()) {
+        WebDriver driver = ping.getKey();
+        boolean alive = awaitPing(ping.getValue(), deadline);
+        AtomicInteger failures = watchedDrivers.get(driver);
+        if (failures == null) {
+          if (!alive) {
+            deadIdleDrivers.add(driver);
+          }
+        } else if (alive) {
+          failures.set(0);
+        } else if (failures.incrementAndGet() >= failuresThreshold) {
+          markDead(driver);
+        }
+      }
+      if (!deadIdleDrivers.isEmpty()) {
+        reporter.debug("Health monitor found [%d] dead pooled driver sessions", deadIdleDrivers.size());
+        sessionPool.evictIdle(deadIdleDrivers::contains);
+      }
+    } catch (Exception ex) {
+      reporter.ignoredException(ex);
+    }
+  }
+
+  /**
+   * Every checked session may hold a thread with a hung ping, so the pool is sized to their number
+   */
+  private void resizePinger(int sessions) {
+    int size = Math.max(1, sessions);
+    if (size > pinger.getMaximumPoolSize()) {
+      pinger.setMaximumPoolSize(size);
+      pinger.setCorePoolSize(size);
+    } else {
+      pinger.setCorePoolSize(size);
+      pinger.setMaximumPoolSize(size);
+    }
+  }
+
+  /**
+   * @return result of a new ping, or a failed ping if the previous one has not returned yet
+   */
+  private Future<Boolean> ping(WebDriver driver) {
+    if (!pingingDrivers.add(driver)) {
+      return CompletableFuture.completedFuture(false);
+    }
+    try {
+      return pinger.submit(() -> {
+        try {
+          return isAlive(driver);
+        } finally {
+          pingingDrivers.remove(driver);
+        }
+      });
+    } catch (RuntimeException ex) {
+      pingingDrivers.remove(driver);
+      throw ex;
+    }
+  }
+
+  private boolean awaitPing(Future<Boolean> ping, long deadline) {
+    try {
+      return ping.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException ex) {
+      ping.cancel(true);
+      return false;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return true;
+    } catch (ExecutionException ex) {
+      return false;
+    }
+  }
+
+  private void markDead(WebDriver driver) {
+    if (watchedDrivers.containsKey(driver) && deadDrivers.add(driver)) {
+      reporter.warn("Health monitor found a dead driver session. It will be replaced on the next access");
+      //a pooled session is forgotten right away, so the pool starts a substitute in the background
+      sessionPool.discard(driver);
+      //the scenario may never access the session again, so it is quit not to hold a browser
+      pinger.execute(() -> quitQuietly(driver));
+    }
+  }
+
+  private void quitQuietly(WebDriver driver) {
+    try {
+      driver.quit();
+    } catch (Exception ex) {
+      reporter.ignoredException(ex);
+    }
+  }
+
+  private boolean isAlive(WebDriver driver) {
+    try {
+      return !driver.getWindowHandles().isEmpty();
+    } catch (Exception ex) {
+      return false;
+    }
+  }
+}
@@ -16,7 +16,11 @@
 
 package com.github.mishaninss.arma.uidriver.webdriver;
 
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.Rectangle;
 import org.openqa.selenium.TakesScreenshot;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
@@ -24,18 +28,51 @@ import org.springframework.stereotype.Component;
 import com.github.mishaninss.arma.reporting.IReporter;
 import com.github.mishaninss.arma.reporting.Reporter;
 import com.github.mishaninss.arma.uidriver.interfaces.IOutputType;
-import com.github.mishaninss.arma.uidriver.interfaces.IScreenshoter;
 
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 @Profile("!chrome")
-public class WdDefaultScreenshoter implements IScreenshoter {
+public class WdDefaultScreenshoter implements IWdScreenshoter {
+
+    /**
+     * Scrolls a clip which is not fully visible to the top left corner of the viewport and returns
+     * the scroll offsets and the device pixel ratio
+     */
+    private static final String VIEWPORT_SCRIPT =
+            "var x = arguments[0], y = arguments[1], w = arguments[2], h = arguments[3];"
+            + "if (x < window.scrollX || x + w > window.scrollX + window.innerWidth"
+            + " || y < window.scrollY || y + h > window.scrollY + window.innerHeight) {"
+            + "  window.scrollTo(x, y);"
+            + "}"
+            + "return [window.scrollX, window.scrollY, window.devicePixelRatio || 1];";
 
     @Autowired
     private IWebDriverFactory webDriverFactory;
+    @Autowired
+    private ScreenshotPipeline screenshotPipeline;
     @Reporter
-    private IReporter reporter;
+    protected IReporter reporter;
+
+    private final Set<ScreenshotOptions.Format> unsupportedFormats = ConcurrentHashMap.newKeySet();
 
     @Override
     public byte[] takeScreenshot() {
@@ -63,6 +100,147 @@ public class WdDefaultScreenshoter implements IScreenshoter {
         throw new IllegalArgumentException("Unsupported format of output type " + clazz);
     }
 
+    @Override
+    public byte[] takeScreenshot(ScreenshotOptions options) {
+        try {
+            ScreenshotOptions imageOptions = toImageOptions(options);
+            byte[] screenshot = takeScreenshot(OutputType.BYTES);
+            return imageOptions.isDefault() ? screenshot : convert(screenshot, imageOptions);
+        } catch (Exception ex) {
+            reporter.debug("Could not take a screenshot", ex);
+            return new byte[0];
+        }
+    }
+
+    @Override
+    public String takeScreenshotAsBase64(ScreenshotOptions options) {
+        return Base64.getEncoder().encodeToString(takeScreenshot(options));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> takeScreenshotAsync(ScreenshotOptions options) {
+        String screenshot;
+        ScreenshotOptions imageOptions;
+        try {
+            imageOptions = toImageOptions(options);
+            screenshot = captureScreenshot(imageOptions);
+        } catch (Exception ex) {
+            reporter.debug("Could not take a screenshot", ex);
+            return CompletableFuture.completedFuture(new byte[0]);
+        }
+        return screenshotPipeline.submit(() -> processScreenshot(screenshot, imageOptions))
+                .exceptionally(ex -> {
+                    reporter.debug("Could not process a screenshot", ex);
+                    return new byte[0];
+                });
+    }
+
+    /**
+     * Grabs a raw Base64 screenshot from the browser
+     */
+    protected String captureScreenshot(ScreenshotOptions options) {
+        return takeScreenshot(OutputType.BASE64);
+    }
+
+    /**
+     * Turns a raw screenshot into an image matching the options. Called in the background
+     */
+    protected byte[] processScreenshot(String screenshot, ScreenshotOptions options) throws IOException {
+        byte[] image = screenshot == null ? new byte[0] : Base64.getDecoder().decode(screenshot);
+        return options.isDefault() ? image : convert(image, options);
+    }
+
+    /**
+     * Translates the clip of the options from CSS pixels of the document into pixels of the
+     * viewport screenshot taken by the driver. Called on the calling thread before the capture, as
+     * a clip which is not fully visible is scrolled into view first. A clip larger than the
+     * viewport is cut to the viewport.
+     *
+     * @return options with the clip in pixels of the captured image
+     */
+    protected ScreenshotOptions toImageOptions(ScreenshotOptions options) {
+        Rectangle clip = options.getClip();
+        if (clip == null) {
+            return options;
+        }
+        List<?> viewport = (List<?>) ((JavascriptExecutor) webDriverFactory.getDriver()).executeScript(
+                VIEWPORT_SCRIPT, clip.getX(), clip.getY(), clip.getWidth(), clip.getHeight());
+        double scrollX = ((Number) viewport.get(0)).doubleValue();
+        double scrollY = ((Number) viewport.get(1)).doubleValue();
+        double ratio = ((Number) viewport.get(2)).doubleValue();
+        Rectangle imageClip = new Rectangle(
+                new Point((int) Math.round((clip.getX() - scrollX) * ratio),
+                        (int) Math.round((clip.getY() - scrollY) * ratio)),
+                new Dimension((int) Math.round(clip.getWidth() * ratio),
+                        (int) Math.round(clip.getHeight() * ratio)));
+        return new ScreenshotOptions()
+                .format(options.getFormat())
+                .quality(options.getQuality())
+                .scale(options.getScale())
+                .clip(imageClip);
+    }
+
+    /**
+     * Crops, scales and encodes an image according to the options. The clip is applied in pixels of
+     * the captured image, as returned by {@link #toImageOptions(ScreenshotOptions)}.
+     */
+    protected byte[] convert(byte[] image, ScreenshotOptions options) throws IOException {
+        BufferedImage source = ImageIO.read(new ByteArrayInputStream(image));
+        if (source == null) {
+            return image;
+        }
+        Rectangle clip = options.getClip();
+        if (clip != null) {
+            int x = Math.max(0, Math.min(clip.getX(), source.getWidth() - 1));
+            int y = Math.max(0, Math.min(clip.getY(), source.getHeight() - 1));
+            source = source.getSubimage(x, y,
+                    Math.max(1, Math.min(clip.getWidth(), source.getWidth() - x)),
+                    Math.max(1, Math.min(clip.getHeight(), source.getHeight() - y)));
+        }
+        int width = Math.max(1, (int) Math.round(source.getWidth() * options.getScale()));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * options.getScale()));
+        boolean lossy = options.getFormat().isLossy();
+        BufferedImage target = new BufferedImage(width, height,
+                lossy ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            if (lossy) {
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, width, height);
+            }
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return encode(target, options);
+    }
+
+    protected byte[] encode(BufferedImage image, ScreenshotOptions options) throws IOException {
+        ScreenshotOptions.Format format = options.getFormat();
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format.getName());
+        if (!writers.hasNext()) {
+            if (unsupportedFormats.add(format)) {
+                reporter.warn("There is no %s image writer, screenshots are encoded as PNG instead", format.getName());
+            }
+            writers = ImageIO.getImageWritersByFormatName(ScreenshotOptions.Format.PNG.getName());
+        }
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(imageOut);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (format.isLossy() && param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(options.getQuality() / 100f);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
     protected <X> X takeScreenshot(OutputType<X> seleniumOutputType) {
         return ((TakesScreenshot) webDriverFactory.getDriver()).getScreenshotAs(seleniumOutputType);
     }
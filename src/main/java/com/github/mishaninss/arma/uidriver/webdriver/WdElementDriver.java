@@ -12,18 +12,13 @@ import com.github.mishaninss.arma.uidriver.interfaces.IPageDriver;
 import com.github.mishaninss.arma.uidriver.interfaces.IPoint;
 import com.github.mishaninss.arma.uidriver.interfaces.IWaitingDriver;
 import com.github.mishaninss.arma.utils.Dimension;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
-import javax.imageio.ImageIO;
 import org.apache.commons.lang3.StringUtils;
 import org.openqa.selenium.By;
 import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.OutputType;
 import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebDriverException;
@@ -63,6 +58,9 @@ public class WdElementDriver implements IElementDriver {
   @Autowired
   @Lazy
   protected IActionsChain actionsChain;
+  @Autowired
+  @Lazy
+  protected IWdScreenshoter screenshoter;
 
   /**
    * Performs scrolling to make the element visible on screen
@@ -278,35 +276,25 @@ public class WdElementDriver implements IElementDriver {
     return this;
   }
 
+  /**
+   * Takes a screenshot of the element. If the driver doesn't support element screenshots, the
+   * element is scrolled into view, including its scrollable containers, and clipped from a
+   * screenshot by its rectangle in CSS pixels of the document
+   *
+   * @param element - locatable element
+   */
   @Override
   public byte[] takeElementScreenshot(@NonNull ILocatable element) {
     var webElement = webElementProvider.findElement(element);
-
-    // Get entire page screenshot
-    byte[] bytes = pageDriver.takeScreenshot();
-    BufferedImage fullImg;
-    try (InputStream is = new ByteArrayInputStream(bytes)) {
-      fullImg = ImageIO.read(is);
-    } catch (Exception ex) {
-      return new byte[0];
-    }
-
-    // Get the location of element on the page
-    var point = webElement.getLocation();
-
-    // Get width and height of the element
-    int eleWidth = webElement.getSize().getWidth();
-    int eleHeight = webElement.getSize().getHeight();
-
-    // Crop the entire page screenshot to get only element screenshot
-    BufferedImage eleScreenshot = fullImg.getSubimage(point.getX(), point.getY(),
-        eleWidth, eleHeight);
-    try (var baos = new ByteArrayOutputStream()) {
-      ImageIO.write(eleScreenshot, "png", baos);
-      return baos.toByteArray();
-    } catch (IOException e) {
-      return new byte[0];
+    try {
+      return webElement.getScreenshotAs(OutputType.BYTES);
+    } catch (WebDriverException ex) {
+      //not every driver supports element screenshots
+      reporter.ignoredException(ex);
     }
+    ((JavascriptExecutor) webDriverFactory.getDriver())
+        .executeScript("arguments[0].scrollIntoView(true)", webElement);
+    return screenshoter.takeScreenshot(ScreenshotOptions.png().clip(webElement.getRect()));
   }
 
   @Override
@@ -7,6 +7,8 @@ import com.github.mishaninss.arma.uidriver.annotations.ElementDriver;
 import com.github.mishaninss.arma.uidriver.interfaces.IElementDriver;
 import com.github.mishaninss.arma.uidriver.interfaces.ILocatable;
 import com.github.mishaninss.arma.uidriver.interfaces.IWaitingDriver;
+import com.github.mishaninss.arma.uidriver.webdriver.profiling.WaitEvent;
+import com.github.mishaninss.arma.uidriver.webdriver.profiling.WaitProfiler;
 import com.google.common.base.Preconditions;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
@@ -44,6 +46,8 @@ public class WdWaitingDriver implements IWaitingDriver {
   private WebDriverProperties properties;
   @Reporter
   private IReporter reporter;
+  @Autowired
+  private WaitProfiler waitProfiler;
   private BiConsumer<Long, TemporalUnit> waitForPageUpdateMethod;
   private static final String WAIT_FOR_PAGE_UPDATE_MSG = "Не дождались полной загрузки страницы в течение %d %s";
   @Value("${arma.driver.timeouts.page.load.fail:true}")
@@ -59,12 +63,13 @@ public class WdWaitingDriver implements IWaitingDriver {
    */
   @Override
   public void setWaitForPageUpdateScript(String script) {
-    setWaitForPageUpdateMethod((timeout, unit) -> performWait((WebDriver webDriver) -> {
-      Preconditions.checkArgument(webDriver != null);
-      JavascriptExecutor js = (JavascriptExecutor) webDriver;
-      Object result = js.executeScript(script);
-      return result == null || Boolean.parseBoolean(result.toString());
-    }, timeout, unit));
+    setWaitForPageUpdateMethod((timeout, unit) -> performWait("pageUpdate.script", null,
+        (WebDriver webDriver) -> {
+          Preconditions.checkArgument(webDriver != null);
+          JavascriptExecutor js = (JavascriptExecutor) webDriver;
+          Object result = js.executeScript(script);
+          return result == null || Boolean.parseBoolean(result.toString());
+        }, timeout, unit, null));
   }
 
   @Override
@@ -86,7 +91,8 @@ public class WdWaitingDriver implements IWaitingDriver {
   public void waitForElementIsVisible(ILocatable element, long timeout, TemporalUnit unit) {
     WebElement webElement = webElementProvider.findElement(element,
         Duration.of(timeout, unit).toMillis());
-    performWait(ExpectedConditions.visibilityOf(webElement), timeout, unit);
+    performWait("visibility", element, ExpectedConditions.visibilityOf(webElement), timeout, unit,
+        null);
   }
 
   @Override
@@ -142,7 +148,8 @@ public class WdWaitingDriver implements IWaitingDriver {
       }
     });
     if (webElement != null) {
-      performWait(ExpectedConditions.invisibilityOf(webElement), timeout, unit, message);
+      performWait("invisibility", element, ExpectedConditions.invisibilityOf(webElement), timeout,
+          unit, message);
     }
   }
 
@@ -159,7 +166,8 @@ public class WdWaitingDriver implements IWaitingDriver {
   @Override
   public void waitForElementIsClickable(ILocatable element, long timeout, TemporalUnit unit) {
     WebElement webElement = webElementProvider.findElement(element);
-    performWait(ExpectedConditions.elementToBeClickable(webElement), timeout, unit);
+    performWait("clickable", element, ExpectedConditions.elementToBeClickable(webElement),
+        timeout, unit, null);
   }
 
   @Override
@@ -175,7 +183,8 @@ public class WdWaitingDriver implements IWaitingDriver {
   @Override
   public void waitForElementToBeSelected(ILocatable element, long timeout, TemporalUnit unit) {
     WebElement webElement = webElementProvider.findElement(element);
-    performWait(ExpectedConditions.elementToBeSelected(webElement), timeout, unit);
+    performWait("selected", element, ExpectedConditions.elementToBeSelected(webElement), timeout,
+        unit, null);
   }
 
   @Override
@@ -191,29 +200,33 @@ public class WdWaitingDriver implements IWaitingDriver {
   @Override
   public void waitForElementToBeNotSelected(ILocatable element, long timeout, TemporalUnit unit) {
     WebElement webElement = webElementProvider.findElement(element);
-    performWait(ExpectedConditions.elementSelectionStateToBe(webElement, false), timeout, unit);
+    performWait("notSelected", element,
+        ExpectedConditions.elementSelectionStateToBe(webElement, false), timeout, unit, null);
   }
 
   @Override
   public void waitForElementAttributeToBeNotEmpty(ILocatable element, String attribute) {
     WebElement webElement = webElementProvider.findElement(element);
-    performWait(ExpectedConditions.attributeToBeNotEmpty(webElement, attribute),
-        properties.driver().timeoutsElement, ChronoUnit.MILLIS);
+    performWait("attributeNotEmpty", element,
+        ExpectedConditions.attributeToBeNotEmpty(webElement, attribute),
+        properties.driver().timeoutsElement, ChronoUnit.MILLIS, null);
   }
 
   @Override
   public void waitForElementAttributeToBeNotEmpty(ILocatable element, String attribute,
       long timeoutInSeconds) {
     WebElement webElement = webElementProvider.findElement(element);
-    performWait(ExpectedConditions.attributeToBeNotEmpty(webElement, attribute), timeoutInSeconds,
-        ChronoUnit.SECONDS);
+    performWait("attributeNotEmpty", element,
+        ExpectedConditions.attributeToBeNotEmpty(webElement, attribute), timeoutInSeconds,
+        ChronoUnit.SECONDS, null);
   }
 
   @Override
   public void waitForElementAttributeToBeNotEmpty(ILocatable element, String attribute,
       long timeout, TemporalUnit unit) {
     WebElement webElement = webElementProvider.findElement(element);
-    performWait(ExpectedConditions.attributeToBeNotEmpty(webElement, attribute), timeout, unit);
+    performWait("attributeNotEmpty", element,
+        ExpectedConditions.attributeToBeNotEmpty(webElement, attribute), timeout, unit, null);
   }
 
   @Override
@@ -228,7 +241,7 @@ public class WdWaitingDriver implements IWaitingDriver {
 
   @Override
   public void waitForUrlToBe(String url, long timeout, TemporalUnit unit) {
-    performWait(ExpectedConditions.urlToBe(url), timeout, unit);
+    performWait("urlToBe", null, ExpectedConditions.urlToBe(url), timeout, unit, null);
   }
 
   @Override
@@ -243,7 +256,7 @@ public class WdWaitingDriver implements IWaitingDriver {
 
   @Override
   public void waitForAlertIsPresent(long timeout, TemporalUnit unit) {
-    performWait(ExpectedConditions.alertIsPresent(), timeout, unit);
+    performWait("alertIsPresent", null, ExpectedConditions.alertIsPresent(), timeout, unit, null);
   }
 
   @Override
@@ -262,7 +275,8 @@ public class WdWaitingDriver implements IWaitingDriver {
   public void waitForElementAttributeToBe(ILocatable element, String attribute, String value,
       long timeout, TemporalUnit unit) {
     WebElement webElement = webElementProvider.findElement(element);
-    performWait(ExpectedConditions.attributeToBe(webElement, attribute, value), timeout, unit);
+    performWait("attributeToBe", element,
+        ExpectedConditions.attributeToBe(webElement, attribute, value), timeout, unit, null);
   }
 
   @Override
@@ -282,7 +296,8 @@ public class WdWaitingDriver implements IWaitingDriver {
   public void waitForElementAttributeContains(ILocatable element, String attribute, String value,
       long timeout, TemporalUnit unit) {
     WebElement webElement = webElementProvider.findElement(element);
-    performWait(ExpectedConditions.attributeContains(webElement, attribute, value), timeout, unit);
+    performWait("attributeContains", element,
+        ExpectedConditions.attributeContains(webElement, attribute, value), timeout, unit, null);
   }
 
   @Override
@@ -343,14 +358,14 @@ public class WdWaitingDriver implements IWaitingDriver {
   public <T> T waitForCondition(Supplier<T> condition, long timeout, TemporalUnit unit,
       String message) {
     ExpectedCondition<T> ec = (WebDriver webdriver) -> condition.get();
-    return performWait((ec), timeout, unit, message);
+    return performWait("condition", null, ec, timeout, unit, message);
   }
 
   @Override
   public <T, R> R waitForCondition(Function<T, R> condition, T arg, long timeout, TemporalUnit unit,
       String message) {
     ExpectedCondition<R> ec = (WebDriver webdriver) -> condition.apply(arg);
-    return performWait((ec), timeout, unit, message);
+    return performWait("condition", null, ec, timeout, unit, message);
   }
 
   @Override
@@ -403,8 +418,8 @@ public class WdWaitingDriver implements IWaitingDriver {
     if (isJQuery()) {
       reporter.debug("jQuery detected");
       if (checkWaitingScript(webDriverFactory.getDriver(), JQUERY_COMPLETE)) {
-        waitForPageUpdateMethod = (timeout, unit) -> performWait(isJQueryCompleted, timeout, unit,
-            String.format(WAIT_FOR_PAGE_UPDATE_MSG, timeout, unit));
+        waitForPageUpdateMethod = (timeout, unit) -> performWait("pageUpdate.jQuery", null,
+            isJQueryCompleted, timeout, unit, String.format(WAIT_FOR_PAGE_UPDATE_MSG, timeout, unit));
         return;
       }
     }
@@ -415,16 +430,18 @@ public class WdWaitingDriver implements IWaitingDriver {
       if (angularHttpSupported) {
         reporter.debug("Angular http waiter supported");
         if (checkWaitingScript(webDriverFactory.getDriver(), ANGULAR_HTTP_COMPLETE)) {
-          waitForPageUpdateMethod = (timeout, unit) -> performWait(isAngularHttpCompleted, timeout,
-              unit, String.format(WAIT_FOR_PAGE_UPDATE_MSG, timeout, unit));
+          waitForPageUpdateMethod = (timeout, unit) -> performWait("pageUpdate.angular", null,
+              isAngularHttpCompleted, timeout, unit,
+              String.format(WAIT_FOR_PAGE_UPDATE_MSG, timeout, unit));
           return;
         }
       }
     }
 
     try {
-      waitForPageUpdateMethod = (timeout, unit) -> performWait(IS_DOC_READY_STATE_COMPLETED,
-          timeout, unit, String.format(WAIT_FOR_PAGE_UPDATE_MSG, timeout, unit));
+      waitForPageUpdateMethod = (timeout, unit) -> performWait("pageUpdate.readyState", null,
+          IS_DOC_READY_STATE_COMPLETED, timeout, unit,
+          String.format(WAIT_FOR_PAGE_UPDATE_MSG, timeout, unit));
       waitForPageUpdateMethod.accept(1L, ChronoUnit.SECONDS);
       reporter.debug("Using default page load waiter");
     } catch (Exception ex) {
@@ -473,6 +490,40 @@ public class WdWaitingDriver implements IWaitingDriver {
 
   protected <T> T performWait(ExpectedCondition<T> condition, long timeout, TemporalUnit unit,
       String message) {
+    return performWait("condition", null, condition, timeout, unit, message);
+  }
+
+  /**
+   * Performs waiting for the condition and records a wait event if the wait profiler is enabled
+   *
+   * @param conditionType - short description of the condition used by the wait profiler
+   * @param element       - awaited element, or null for page-level waits
+   */
+  protected <T> T performWait(String conditionType, ILocatable element,
+      ExpectedCondition<T> condition, long timeout, TemporalUnit unit, String message) {
+    if (!waitProfiler.isEnabled()) {
+      return doWait(condition, timeout, unit, message);
+    }
+    PollCountingCondition<T> countingCondition = new PollCountingCondition<>(condition);
+    WaitEvent.Outcome outcome = WaitEvent.Outcome.ERROR;
+    long start = System.currentTimeMillis();
+    try {
+      T result = doWait(countingCondition, timeout, unit, message);
+      outcome = WaitEvent.Outcome.SUCCESS;
+      return result;
+    } catch (TimeoutException ex) {
+      outcome = WaitEvent.Outcome.TIMEOUT;
+      throw ex;
+    } finally {
+      waitProfiler.record(new WaitEvent(conditionType,
+          element != null ? String.valueOf(element.getLocatorsPath()) : null,
+          Duration.of(timeout, unit).toMillis(), System.currentTimeMillis() - start,
+          countingCondition.getPolls(), outcome));
+    }
+  }
+
+  private <T> T doWait(ExpectedCondition<T> condition, long timeout, TemporalUnit unit,
+      String message) {
     Duration duration = Duration.of(timeout, unit);
     long timeoutInMillis = duration.toMillis();
     if (properties.driver().timeoutsDriverOperation > 0
@@ -495,14 +546,14 @@ public class WdWaitingDriver implements IWaitingDriver {
     T ret = null;
     for (int i = 0; i < count; i++) {
       try {
-        ret = performWait(condition, partTimeout, ChronoUnit.MILLIS, message);
+        ret = doWait(condition, partTimeout, ChronoUnit.MILLIS, message);
         break;
       } catch (TimeoutException ex) {
         //ignore exception
       }
     }
     if (ret == null) {
-      ret = performWait(condition, delta, ChronoUnit.MILLIS, message);
+      ret = doWait(condition, delta, ChronoUnit.MILLIS, message);
     }
     return ret;
   }
@@ -553,6 +604,34 @@ public class WdWaitingDriver implements IWaitingDriver {
     return result == null || Boolean.parseBoolean(result.toString());
   };
 
+  /**
+   * Counts evaluations of the wrapped condition
+   */
+  private static class PollCountingCondition<T> implements ExpectedCondition<T> {
+
+    private final ExpectedCondition<T> condition;
+    private int polls;
+
+    PollCountingCondition(ExpectedCondition<T> condition) {
+      this.condition = condition;
+    }
+
+    @Override
+    public T apply(WebDriver webDriver) {
+      polls++;
+      return condition.apply(webDriver);
+    }
+
+    int getPolls() {
+      return polls;
+    }
+
+    @Override
+    public String toString() {
+      return condition.toString();
+    }
+  }
+
   private boolean checkWaitingScript(WebDriver webDriver, String script) {
     try {
       JavascriptExecutor js = (JavascriptExecutor) webDriver;
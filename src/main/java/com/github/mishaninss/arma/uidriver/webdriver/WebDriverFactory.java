@@ -19,22 +19,36 @@ package com.github.mishaninss.arma.uidriver.webdriver;
 import org.apache.commons.lang3.StringUtils;
 import org.openqa.selenium.Dimension;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import org.openqa.selenium.remote.RemoteWebDriver;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import com.github.mishaninss.arma.data.WebDriverProperties;
+import com.github.mishaninss.arma.exceptions.SessionLostException;
 import com.github.mishaninss.arma.reporting.IReporter;
 import com.github.mishaninss.arma.reporting.Reporter;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Provides a single instance of WebDriver
@@ -51,11 +65,34 @@ public class WebDriverFactory implements IWebDriverFactory, InitializingBean, Di
     protected WebDriverProperties properties;
     @Autowired
     private IWebDriverCreator webDriverCreator;
+    @Autowired
+    private WebDriverSessionPool sessionPool;
+    @Autowired
+    private WebDriverSessionResetter sessionResetter;
+    @Autowired
+    private SessionHealthMonitor healthMonitor;
+    @Autowired
+    @Lazy
+    private WebElementProvider webElementProvider;
 
-    private final Map<String, WebDriver> namedDrivers = new HashMap<>();
+    private final Map<String, WebDriver> namedDrivers = new ConcurrentHashMap<>();
+    /**
+     * Locks by session name, so concurrent accesses to a session not started yet start one browser
+     */
+    private final Map<String, Object> sessionLocks = new ConcurrentHashMap<>();
+    /**
+     * Session bound to the current thread by {@link #runInSession(String, Runnable)}
+     */
+    private final ThreadLocal<String> boundSession = new ThreadLocal<>();
+    private ExecutorService sessionsExecutor;
+    private ExecutorService lifecycleExecutor;
 
     private volatile String currentSessionName = DEFAULT_DRIVER_NAME;
-    protected WebDriver driver;
+    /**
+     * Driver of the current session. Sessions are started and quit on other threads too, so it is
+     * volatile
+     */
+    protected volatile WebDriver driver;
 
     private static final ThreadLocal<IWebDriverFactory> INSTANCES = new ThreadLocal<>();
     private static final String DEFAULT_DRIVER_NAME = "DEFAULT_DRIVER";
@@ -69,6 +106,16 @@ public class WebDriverFactory implements IWebDriverFactory, InitializingBean, Di
     @Override
     public void destroy() {
         closeAllSessions();
+        synchronized (this) {
+            if (sessionsExecutor != null) {
+                sessionsExecutor.shutdownNow();
+                sessionsExecutor = null;
+            }
+            if (lifecycleExecutor != null) {
+                lifecycleExecutor.shutdownNow();
+                lifecycleExecutor = null;
+            }
+        }
         INSTANCES.remove();
     }
 
@@ -84,12 +131,87 @@ public class WebDriverFactory implements IWebDriverFactory, InitializingBean, Di
      */
     @Override
     public WebDriver getDriver() {
-        if (!isBrowserStarted()) {
-            reporter.info("Starting driver session [%s]", currentSessionName);
-            driver = webDriverCreator.createDriver(desiredCapabilities);
-            namedDrivers.put(currentSessionName, driver);
+        String sessionName = boundSession.get();
+        if (sessionName != null) {
+            WebDriver boundDriver = checkHealth(sessionName, namedDrivers.get(sessionName));
+            return boundDriver != null ? boundDriver : startNamedDriver(sessionName);
         }
-        return driver;
+        String sessionNameToStart = currentSessionName;
+        WebDriver currentDriver = checkHealth(sessionNameToStart, activeDriver());
+        if (currentDriver == null) {
+            currentDriver = startNamedDriver(sessionNameToStart);
+            if (sessionNameToStart.equals(currentSessionName)) {
+                driver = currentDriver;
+            }
+        }
+        return currentDriver;
+    }
+
+    /**
+     * Starts the session unless a concurrent call has already started it
+     */
+    private WebDriver startNamedDriver(String sessionName) {
+        synchronized (sessionLocks.computeIfAbsent(sessionName, name -> new Object())) {
+            WebDriver sessionDriver = namedDrivers.get(sessionName);
+            if (sessionDriver == null) {
+                sessionDriver = startDriver(sessionName);
+                namedDrivers.put(sessionName, sessionDriver);
+            }
+            return sessionDriver;
+        }
+    }
+
+    private WebDriver startDriver(String sessionName) {
+        reporter.info("Starting driver session [%s]", sessionName);
+        WebDriver newDriver = createDriver();
+        healthMonitor.watch(newDriver);
+        return newDriver;
+    }
+
+    /**
+     * Terminates the session if it has been found dead by the health monitor
+     */
+    private WebDriver checkHealth(String sessionName, WebDriver sessionDriver) {
+        if (sessionDriver != null && healthMonitor.isDead(sessionDriver)) {
+            hardCloseDriver();
+            throw new SessionLostException(
+                    String.format("Driver session [%s] has been found dead by the health monitor", sessionName));
+        }
+        return sessionDriver;
+    }
+
+    /**
+     * Takes a warmed session from the pool, if the pool is enabled and no custom capabilities are
+     * set, or creates a new one otherwise
+     */
+    protected WebDriver createDriver() {
+        if (desiredCapabilities == null && sessionPool.isEnabled()) {
+            return sessionPool.lease();
+        }
+        return webDriverCreator.createDriver(desiredCapabilities);
+    }
+
+    /**
+     * Returns the driver of the session bound to the current thread, or the driver of the current
+     * session if no session is bound
+     */
+    protected WebDriver activeDriver() {
+        String sessionName = boundSession.get();
+        if (sessionName != null) {
+            return namedDrivers.get(sessionName);
+        }
+        WebDriver currentDriver = driver;
+        if (currentDriver == null) {
+            currentDriver = namedDrivers.get(currentSessionName);
+            driver = currentDriver;
+        }
+        return currentDriver;
+    }
+
+    @Override
+    public String getCurrentSessionName() {
+        String sessionName = boundSession.get();
+        return sessionName != null ? sessionName : currentSessionName;
     }
 
     @Override
@@ -114,13 +236,144 @@ public class WebDriverFactory implements IWebDriverFactory, InitializingBean, Di
         closeDriver();
     }
 
+    /**
+     * Quits all the sessions concurrently. A session which does not quit within
+     * {@link WebDriverProperties.Driver#TIMEOUTS_SESSION_QUIT} is abandoned and its quit thread is
+     * interrupted. A quit blocked in a call which ignores interrupts keeps its thread busy until
+     * the call returns.
+     */
     @Override
     public void closeAllSessions() {
-        new HashSet<>(namedDrivers.keySet()).forEach(sessionName -> {
-            switchToSession(sessionName);
-            closeDriver();
-        });
+        Map<String, WebDriver> sessions = new LinkedHashMap<>(namedDrivers);
+        if (!sessions.isEmpty()) {
+            quitConcurrently(sessions);
+        }
         namedDrivers.clear();
+        sessions.keySet().forEach(webElementProvider::clearCache);
+        driver = null;
+    }
+
+    private void quitConcurrently(Map<String, WebDriver> sessions) {
+        long quitTimeout = properties.driver().timeoutsSessionQuit;
+        int parallelism = Math.max(1, properties.driver().sessionsParallelism);
+        long start = System.currentTimeMillis();
+        Map<String, Future<?>> futures = new LinkedHashMap<>();
+        //every quit is bound to its session, so a failure handled by SeleniumAspects closes that session only
+        sessions.forEach((sessionName, sessionDriver) -> futures.put(sessionName, lifecycleExecutor().submit(
+                () -> runInSession(sessionName, () -> quitDriver(sessionName, sessionDriver)))));
+        int index = 0;
+        for (Map.Entry<String, Future<?>> future : futures.entrySet()) {
+            //sessions queued behind the first batch get their deadline shifted accordingly
+            long deadline = start + quitTimeout * (index++ / parallelism + 1);
+            try {
+                future.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (java.util.concurrent.TimeoutException ex) {
+                future.getValue().cancel(true);
+                reporter.warn("Driver session [%s] has not quit in [%d] ms and is abandoned",
+                        future.getKey(), quitTimeout);
+                sessionPool.discard(sessions.get(future.getKey()));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException ex) {
+                reporter.ignoredException(ex.getCause());
+            }
+        }
+    }
+
+    @Override
+    public void openSessions(String... sessionNames) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (String sessionName : sessionNames) {
+            if (!namedDrivers.containsKey(sessionName)) {
+                futures.add(CompletableFuture.runAsync(
+                        () -> runInSession(sessionName, this::getDriver), lifecycleExecutor()));
+            }
+        }
+        awaitAll(futures);
+    }
+
+    @Override
+    public void runInSession(String sessionName, Runnable action) {
+        String previousSession = boundSession.get();
+        boundSession.set(sessionName);
+        try {
+            action.run();
+        } finally {
+            if (previousSession == null) {
+                boundSession.remove();
+            } else {
+                boundSession.set(previousSession);
+            }
+        }
+    }
+
+    @Override
+    public void runInSessions(Map<String, Runnable> actions) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        new LinkedHashMap<>(actions).forEach((sessionName, action) -> futures.add(
+                CompletableFuture.runAsync(() -> runInSession(sessionName, action), sessionsExecutor())));
+        awaitAll(futures);
+    }
+
+    /**
+     * Waits for all the tasks and rethrows the first failure with the others added as suppressed
+     */
+    private void awaitAll(List<CompletableFuture<Void>> futures) {
+        Throwable failure = null;
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.join();
+            } catch (CompletionException ex) {
+                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new WebDriverException(failure);
+        }
+    }
+
+    /**
+     * Runs the actions of the sessions. It is not bounded as actions of different sessions may wait
+     * for each other
+     */
+    protected synchronized ExecutorService sessionsExecutor() {
+        if (sessionsExecutor == null) {
+            sessionsExecutor = Executors.newCachedThreadPool(daemonThreadFactory("arma-session-"));
+        }
+        return sessionsExecutor;
+    }
+
+    /**
+     * Starts and quits sessions, no more than {@link WebDriverProperties.Driver#SESSIONS_PARALLELISM}
+     * at a time
+     */
+    protected synchronized ExecutorService lifecycleExecutor() {
+        if (lifecycleExecutor == null) {
+            lifecycleExecutor = Executors.newFixedThreadPool(Math.max(1, properties.driver().sessionsParallelism),
+                    daemonThreadFactory("arma-session-lifecycle-"));
+        }
+        return lifecycleExecutor;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     /**
@@ -128,14 +381,33 @@ public class WebDriverFactory implements IWebDriverFactory, InitializingBean, Di
      */
     @Override
     public void closeDriver() {
-        if (isBrowserStarted()) {
-            reporter.info("Quit driver [%s]", currentSessionName);
-            try {
-                driver.quit();
-            } finally {
-                driver = null;
-                namedDrivers.remove(currentSessionName);
+        WebDriver activeDriver = activeDriver();
+        if (activeDriver != null) {
+            quitDriver(getCurrentSessionName(), activeDriver);
+        }
+    }
+
+    private void quitDriver(String sessionName, WebDriver sessionDriver) {
+        reporter.info("Quit driver [%s]", sessionName);
+        try {
+            if (sessionPool.isEnabled()) {
+                sessionPool.release(sessionDriver);
+            } else {
+                sessionDriver.quit();
             }
+        } finally {
+            forgetDriver(sessionName, sessionDriver);
+        }
+    }
+
+    private void forgetDriver(String sessionName, WebDriver sessionDriver) {
+        healthMonitor.unwatch(sessionDriver);
+        if (namedDrivers.remove(sessionName, sessionDriver)) {
+            //cached elements of a closed session are stale
+            webElementProvider.clearCache(sessionName);
+        }
+        if (driver == sessionDriver) {
+            driver = null;
         }
     }
 
@@ -144,9 +416,22 @@ public class WebDriverFactory implements IWebDriverFactory, InitializingBean, Di
      */
     @Override
     public void hardCloseDriver() {
-        reporter.info("Terminating driver session [%s]", currentSessionName);
-        driver = null;
-        namedDrivers.remove(currentSessionName);
+        String sessionName = getCurrentSessionName();
+        reporter.info("Terminating driver session [%s]", sessionName);
+        WebDriver activeDriver = activeDriver();
+        if (activeDriver != null) {
+            sessionPool.discard(activeDriver);
+            forgetDriver(sessionName, activeDriver);
+        }
+    }
+
+    @Override
+    public void resetSession() {
+        WebDriver activeDriver = activeDriver();
+        if (activeDriver != null) {
+            reporter.info("Reset driver session [%s]", getCurrentSessionName());
+            sessionResetter.reset(activeDriver);
+        }
     }
 
     /**
@@ -154,14 +439,15 @@ public class WebDriverFactory implements IWebDriverFactory, InitializingBean, Di
      */
     @Override
     public boolean isBrowserStarted() {
-        return driver != null;
+        return activeDriver() != null;
     }
 
     @Override
     public boolean isBrowserAlive() {
-        if (isBrowserStarted()) {
+        WebDriver activeDriver = activeDriver();
+        if (activeDriver != null) {
             try {
-                return !driver.getWindowHandles().isEmpty();
+                return !activeDriver.getWindowHandles().isEmpty();
             } catch (Exception ex) {
                 reporter.ignoredException(ex);
                 return false;
@@ -178,15 +464,17 @@ public class WebDriverFactory implements IWebDriverFactory, InitializingBean, Di
      */
     @Override
     public void setWaitingTimeout(int timeout) {
-        if (isBrowserStarted()) {
-            driver.manage().timeouts().implicitlyWait(timeout, TimeUnit.MILLISECONDS);
+        WebDriver activeDriver = activeDriver();
+        if (activeDriver != null) {
+            activeDriver.manage().timeouts().implicitlyWait(timeout, TimeUnit.MILLISECONDS);
         }
     }
 
     @Override
     public void restoreWaitingTimeout() {
-        if (isBrowserStarted()) {
-            driver.manage().timeouts().implicitlyWait(properties.driver().timeoutsElement, TimeUnit.MILLISECONDS);
+        WebDriver activeDriver = activeDriver();
+        if (activeDriver != null) {
+            activeDriver.manage().timeouts().implicitlyWait(properties.driver().timeoutsElement, TimeUnit.MILLISECONDS);
         }
     }
 
@@ -212,14 +500,15 @@ public class WebDriverFactory implements IWebDriverFactory, InitializingBean, Di
 
     @Override
     public String getSessionId() {
-        if (!isBrowserStarted()) {
+        WebDriver activeDriver = activeDriver();
+        if (activeDriver == null) {
             return null;
         }
-        if (driver instanceof RemoteWebDriver) {
-            return ((RemoteWebDriver) driver).getSessionId().toString();
+        if (activeDriver instanceof RemoteWebDriver) {
+            return ((RemoteWebDriver) activeDriver).getSessionId().toString();
         }
 
         throw new UnsupportedOperationException("You are using base Web Driver Factory with local browser driver. " +
                 "To get session ID use browser specific web driver factory");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver;
+
+import com.github.mishaninss.arma.aspects.SeleniumAspects;
+import com.github.mishaninss.arma.reporting.IReporter;
+import com.github.mishaninss.arma.reporting.Reporter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import org.openqa.selenium.WebDriver;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps a number of browser sessions warmed in the background, so a scenario doesn't wait for a
+ * browser start. Sessions are reset when they are returned to the pool and replaced when they are
+ * not alive anymore. Pool is disabled if its size is 0.
+ *
+ * <p>The pool pings and quits sessions which are not the current session of the calling thread,
+ * so its Selenium calls, as well as session starts on the warming threads, are not handled by
+ * {@link SeleniumAspects}.
+ *
+ * @author Sergey Mishanin
+ */
+@Component
+public class WebDriverSessionPool implements InitializingBean, DisposableBean {
+
+  public static final String POOL_SIZE_PROPERTY = "arma.driver.pool.size";
+  private static final long WARM_UP_BACKOFF_MILLIS = 1000;
+  private static final long MAX_WARM_UP_BACKOFF_MILLIS = 60000;
+
+  @Value("${" + POOL_SIZE_PROPERTY + ":0}")
+  private int poolSize;
+  @Autowired
+  private IWebDriverCreator webDriverCreator;
+  @Autowired
+  private WebDriverSessionResetter sessionResetter;
+  @Reporter
+  private IReporter reporter;
+
+  private final BlockingQueue<WebDriver> idleDrivers = new LinkedBlockingQueue<>();
+  private final Set<WebDriver> leasedDrivers = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger pendingDrivers = new AtomicInteger();
+  private final AtomicInteger warmUpFailures = new AtomicInteger();
+  private ExecutorService warmer;
+  private volatile boolean closed;
+
+  @Override
+  public void afterPropertiesSet() {
+    if (isEnabled()) {
+      AtomicInteger threadNumber = new AtomicInteger();
+      warmer = Executors.newFixedThreadPool(poolSize, runnable -> {
+        Thread thread = new Thread(runnable, "arma-session-pool-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+      replenish();
+    }
+  }
+
+  @Override
+  public void destroy() {
+    closed = true;
+    if (warmer != null) {
+      warmer.shutdownNow();
+    }
+    WebDriver driver;
+    while ((driver = idleDrivers.poll()) != null) {
+      quitQuietly(driver);
+    }
+  }
+
+  public boolean isEnabled() {
+    return poolSize > 0;
+  }
+
+  /**
+   * Provides a ready browser session. If there is no warmed session, a new one is created on the
+   * calling thread.
+   */
+  public WebDriver lease() {
+    WebDriver driver;
+    while ((driver = idleDrivers.poll()) != null) {
+      if (isAlive(driver)) {
+        break;
+      }
+      reporter.debug("Discard dead pooled driver session");
+      quitQuietly(driver);
+    }
+    replenish();
+    if (driver == null) {
+      reporter.debug("There is no warmed driver session in the pool. Creating a new one");
+      driver = webDriverCreator.createDriver(null);
+    }
+    leasedDrivers.add(driver);
+    return driver;
+  }
+
+  /**
+   * Returns a leased session to the pool. The session is reset before it could be leased again. A
+   * session which is not leased from the pool is just closed.
+   */
+  public void release(WebDriver driver) {
+    if (!leasedDrivers.remove(driver)) {
+      driver.quit();
+      return;
+    }
+    if (closed || idleDrivers.size() >= poolSize) {
+      quitQuietly(driver);
+      return;
+    }
+    try {
+      sessionResetter.reset(driver);
+      idleDrivers.add(driver);
+    } catch (Exception ex) {
+      reporter.debug("Could not reset pooled driver session", ex);
+      quitQuietly(driver);
+      replenish();
+    }
+  }
+
+  /**
+   * Forgets a leased session which could not be closed gracefully
+   */
+  public void discard(WebDriver driver) {
+    if (leasedDrivers.remove(driver)) {
+      replenish();
+    }
+  }
+
+  public int getIdleCount() {
+    return idleDrivers.size();
+  }
+
+  public List<WebDriver> getIdleDrivers() {
+    return new ArrayList<>(idleDrivers);
+  }
+
+  /**
+   * Removes idle sessions matching the condition and starts replacements for them
+   */
+  public void evictIdle(Predicate<WebDriver> condition) {
+    for (WebDriver driver : getIdleDrivers()) {
+      if (condition.test(driver) && idleDrivers.remove(driver)) {
+        reporter.debug("Evict dead pooled driver session");
+        quitQuietly(driver);
+      }
+    }
+    replenish();
+  }
+
+  private void replenish() {
+    if (!isEnabled() || closed) {
+      return;
+    }
+    while (true) {
+      int pending = pendingDrivers.get();
+      if (idleDrivers.size() + pending >= poolSize) {
+        return;
+      }
+      if (pendingDrivers.compareAndSet(pending, pending + 1)) {
+        warmer.execute(() -> SeleniumAspects.runUnguarded(this::warmUp));
+      }
+    }
+  }
+
+  /**
+   * Starts a session for the pool. A failed start is retried with an exponential backoff until
+   * the pool is closed
+   */
+  private void warmUp() {
+    try {
+      while (!closed) {
+        try {
+          WebDriver driver = webDriverCreator.createDriver(null);
+          warmUpFailures.set(0);
+          if (closed) {
+            quitQuietly(driver);
+          } else {
+            idleDrivers.add(driver);
+            reporter.debug("Pooled driver session is ready");
+          }
+          return;
+        } catch (Exception ex) {
+          int failures = warmUpFailures.incrementAndGet();
+          long backoff = Math.min(MAX_WARM_UP_BACKOFF_MILLIS,
+              WARM_UP_BACKOFF_MILLIS << Math.min(failures - 1, 16));
+          reporter.warn(String.format(
+              "Could not start pooled driver session, attempt %d. Retry in [%d] ms", failures,
+              backoff), ex);
+          Thread.sleep(backoff);
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      pendingDrivers.decrementAndGet();
+    }
+  }
+
+  private boolean isAlive(WebDriver driver) {
+    try {
+      return !driver.getWindowHandles().isEmpty();
+    } catch (Exception ex) {
+      reporter.ignoredException(ex);
+      return false;
+    }
+  }
+
+  private void quitQuietly(WebDriver driver) {
+    try {
+      driver.quit();
+    } catch (Exception ex) {
+      reporter.ignoredException(ex);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver;
+
+import com.github.mishaninss.arma.reporting.IReporter;
+import com.github.mishaninss.arma.reporting.Reporter;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchWindowException;
+import org.openqa.selenium.WebDriver;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Brings a browser session to a clean state, so it could be reused by another scenario
+ *
+ * @author Sergey Mishanin
+ */
+@Component
+@Profile("!chrome")
+public class WebDriverSessionResetter {
+
+  protected static final String ABOUT_BLANK = "about:blank";
+  private static final String CLEAR_STORAGE_SCRIPT =
+      "try { window.localStorage.clear(); } catch (e) {}"
+          + "try { window.sessionStorage.clear(); } catch (e) {}";
+
+  @Reporter
+  protected IReporter reporter;
+
+  /**
+   * Closes all the windows except the current one, clears cookies and storages of the current origin
+   * and navigates to about:blank. WebDriver gives no access to other origins, so local storage,
+   * IndexedDB and service workers of other origins visited by the session are kept.
+   */
+  public void reset(WebDriver driver) {
+    closeExtraWindows(driver);
+    clearStorage(driver);
+    driver.manage().deleteAllCookies();
+    driver.get(ABOUT_BLANK);
+  }
+
+  /**
+   * Closes all the windows except the current one. Window handles are not ordered, so the first
+   * of them may be a popup. If the current window has been closed, the first handle is kept
+   */
+  protected void closeExtraWindows(WebDriver driver) {
+    Set<String> windowHandles = new LinkedHashSet<>(driver.getWindowHandles());
+    if (windowHandles.isEmpty()) {
+      return;
+    }
+    String mainWindow;
+    try {
+      mainWindow = driver.getWindowHandle();
+    } catch (NoSuchWindowException ex) {
+      mainWindow = windowHandles.iterator().next();
+    }
+    windowHandles.remove(mainWindow);
+    for (String windowHandle : windowHandles) {
+      driver.switchTo().window(windowHandle);
+      driver.close();
+    }
+    driver.switchTo().window(mainWindow);
+  }
+
+  protected void clearStorage(WebDriver driver) {
+    try {
+      ((JavascriptExecutor) driver).executeScript(CLEAR_STORAGE_SCRIPT);
+    } catch (Exception ex) {
+      reporter.ignoredException(ex);
+    }
+  }
+}
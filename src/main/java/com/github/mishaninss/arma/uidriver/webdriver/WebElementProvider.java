@@ -9,6 +9,7 @@ import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.openqa.selenium.NoSuchElementException;
@@ -32,12 +33,24 @@ public class WebElementProvider {
   private LocatorConverter locatorConverter;
 
   /**
-   * WebElements cache
+   * WebElements caches by session name. Each session is driven by a single thread at a time
    */
-  private final Map<ILocatable, WebElement> elements = new HashMap<>();
+  private final Map<String, Map<ILocatable, WebElement>> elements = new ConcurrentHashMap<>();
 
   public void clearCache() {
-    elements.clear();
+    elements.remove(webDriverFactory.getCurrentSessionName());
+  }
+
+  /**
+   * Drops the cache of the given session, e.g. when the session is closed
+   */
+  public void clearCache(String sessionName) {
+    elements.remove(sessionName);
+  }
+
+  private Map<ILocatable, WebElement> elements() {
+    return elements.computeIfAbsent(webDriverFactory.getCurrentSessionName(),
+        sessionName -> new HashMap<>());
   }
 
   public WebElement findElement(ILocatable element, long timeoutInMilliseconds) {
@@ -53,7 +66,7 @@ public class WebElementProvider {
   WebElement findElement(ILocatable element) {
     if (!element.useContextLookup()) {
       var webElement = checkIndexAndFindElement(null, element.getLocator());
-      elements.put(element, webElement);
+      elements().put(element, webElement);
       return webElement;
     } else {
       webDriverFactory.getDriver().switchTo().defaultContent();
@@ -70,13 +83,13 @@ public class WebElementProvider {
             frameElement = findElement(contextElement, nextElement.getLocator());
           }
           webDriverFactory.getDriver().switchTo().frame(frameElement);
-          elements.put(nextElement, webElement);
+          elements().put(nextElement, webElement);
           webElement = null;
         } else {
           webElement = cacheLookup(nextElement);
           if (webElement == null) {
             webElement = checkIndexAndFindElement(contextElement, nextElement.getLocator());
-            elements.put(nextElement, webElement);
+            elements().put(nextElement, webElement);
           }
         }
         contextElement = webElement;
@@ -98,7 +111,7 @@ public class WebElementProvider {
 
   private @Nullable
   WebElement cacheLookup(ILocatable element) {
-    return elements.get(element);
+    return elements().get(element);
   }
 
   private @NonNull
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver.chrome;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.apache.commons.lang3.StringUtils;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.json.Json;
+
+/**
+ * DevTools connection to a single page of a local browser. Commands are sent over one WebSocket
+ * and multiplexed by id, so they don't wait for each other, and events of the page are delivered
+ * to the registered listeners.
+ *
+ * @author Sergey Mishanin
+ */
+public class CdpChannel implements AutoCloseable {
+
+  private static final Json JSON = new Json();
+
+  private final WebSocket webSocket;
+  private final AtomicLong ids = new AtomicLong();
+  private final Map<Long, PendingCommand> pendingCommands = new ConcurrentHashMap<>();
+  private final Map<String, List<Consumer<Map<String, Object>>>> listeners = new ConcurrentHashMap<>();
+  private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+  private CompletableFuture<WebSocket> lastSend;
+  private volatile boolean closed;
+
+  private CdpChannel(HttpClient httpClient, URI webSocketUrl, Duration timeout) {
+    try {
+      webSocket = httpClient.newWebSocketBuilder()
+          .connectTimeout(timeout)
+          .buildAsync(webSocketUrl, new Listener())
+          .get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new WebDriverException("Interrupted while connecting to " + webSocketUrl, ex);
+    } catch (ExecutionException | java.util.concurrent.TimeoutException ex) {
+      throw new WebDriverException("Could not connect to " + webSocketUrl, ex);
+    }
+    lastSend = CompletableFuture.completedFuture(webSocket);
+  }
+
+  /**
+   * Connects to a page target of the browser
+   *
+   * @param debuggerAddress - host:port of the browser debugger, as reported by the
+   *                        goog:chromeOptions.debuggerAddress capability
+   * @param targetId        - id of the preferred page, e.g. the current window handle. The first
+   *                        page is used if there is no such page
+   */
+  public static CdpChannel connect(String debuggerAddress, String targetId, Duration timeout)
+      throws IOException {
+    HttpClient httpClient = HttpClient.newBuilder().connectTimeout(timeout).build();
+    HttpRequest request = HttpRequest.newBuilder(URI.create("http://" + debuggerAddress + "/json/list"))
+        .timeout(timeout)
+        .GET()
+        .build();
+    String body;
+    try {
+      body = httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while listing DevTools targets", ex);
+    }
+    List<Map<String, Object>> targets = JSON.toType(body, Json.LIST_OF_MAPS_TYPE);
+    String webSocketUrl = null;
+    for (Map<String, Object> target : targets) {
+      if ("page".equals(target.get("type")) && target.get("webSocketDebuggerUrl") != null) {
+        if (webSocketUrl == null || StringUtils.endsWith(targetId, String.valueOf(target.get("id")))) {
+          webSocketUrl = target.get("webSocketDebuggerUrl").toString();
+        }
+      }
+    }
+    if (webSocketUrl == null) {
+      throw new IOException("There is no page target to connect to at " + debuggerAddress);
+    }
+    return new CdpChannel(httpClient, URI.create(webSocketUrl), timeout);
+  }
+
+  /**
+   * Sends a command without waiting for its result
+   *
+   * @return future result of the command
+   */
+  public CompletableFuture<Map<String, Object>> sendAsync(String method, Map<String, Object> params) {
+    PendingCommand command = new PendingCommand(method);
+    if (closed) {
+      command.result.completeExceptionally(new WebDriverException("DevTools channel is closed"));
+      return command.result;
+    }
+    long id = ids.incrementAndGet();
+    pendingCommands.put(id, command);
+    //a command cancelled by a timeout is forgotten, its late reply is ignored
+    command.result.whenComplete((result, error) -> pendingCommands.remove(id, command));
+    String message = JSON.toJson(Map.of("id", id, "method", method, "params", params));
+    synchronized (this) {
+      //WebSocket doesn't allow a new message until the previous one is sent
+      lastSend = lastSend.thenCompose(socket -> socket.sendText(message, true));
+      lastSend.whenComplete((socket, error) -> {
+        if (error != null) {
+          //a failed send leaves the socket unusable
+          fail(id, error);
+          abort(new WebDriverException("Could not send '" + method + "', DevTools channel is closed",
+              error));
+        }
+      });
+    }
+    return command.result;
+  }
+
+  /**
+   * Sends a command and waits for its result
+   */
+  public Map<String, Object> send(String method, Map<String, Object> params, Duration timeout) {
+    CompletableFuture<Map<String, Object>> result = sendAsync(method, params);
+    return await(method, result, timeout);
+  }
+
+  static Map<String, Object> await(String method, CompletableFuture<Map<String, Object>> result,
+      Duration timeout) {
+    try {
+      return result.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new WebDriverException("Interrupted while waiting for '" + method + "'", ex);
+    } catch (java.util.concurrent.TimeoutException ex) {
+      result.cancel(true);
+      throw new TimeoutException("Command '" + method + "' timed out after " + timeout.toMillis() + " ms", ex);
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof WebDriverException) {
+        throw (WebDriverException) ex.getCause();
+      }
+      throw new WebDriverException("Command '" + method + "' failed", ex.getCause());
+    }
+  }
+
+  public void addListener(String event, Consumer<Map<String, Object>> listener) {
+    listeners.computeIfAbsent(event, key -> new CopyOnWriteArrayList<>()).add(listener);
+  }
+
+  public void removeListener(String event, Consumer<Map<String, Object>> listener) {
+    List<Consumer<Map<String, Object>>> eventListeners = listeners.get(event);
+    if (eventListeners != null) {
+      eventListeners.remove(listener);
+    }
+  }
+
+  /**
+   * Registers an action to run once when the channel is closed, either by {@link #close()} or by
+   * the browser. The action runs right away if the channel is already closed
+   */
+  public void addCloseListener(Runnable listener) {
+    closeListeners.add(listener);
+    if (closed) {
+      runCloseListener(listener);
+    }
+  }
+
+  public void removeCloseListener(Runnable listener) {
+    closeListeners.remove(listener);
+  }
+
+  public boolean isOpen() {
+    return !closed;
+  }
+
+  @Override
+  public void close() {
+    abort(new WebDriverException("DevTools channel is closed"));
+  }
+
+  /**
+   * Closes the socket and fails all the pending commands
+   */
+  private void abort(WebDriverException error) {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    webSocket.abort();
+    failAll(error);
+    closeListeners.forEach(this::runCloseListener);
+  }
+
+  private void runCloseListener(Runnable listener) {
+    //removal guarantees a single run if the channel is closed while the listener is being added
+    if (closeListeners.remove(listener)) {
+      try {
+        listener.run();
+      } catch (RuntimeException ex) {
+        //a failed listener must not affect the others
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void onMessage(String message) {
+    Map<String, Object> json = JSON.toType(message, Json.MAP_TYPE);
+    Object id = json.get("id");
+    if (id instanceof Number) {
+      PendingCommand command = pendingCommands.remove(((Number) id).longValue());
+      if (command == null) {
+        return;
+      }
+      if (json.get("error") != null) {
+        command.result.completeExceptionally(
+            new WebDriverException("Command '" + command.method + "' failed: " + json.get("error")));
+      } else {
+        Object result = json.get("result");
+        command.result.complete(result instanceof Map ? (Map<String, Object>) result : Map.of());
+      }
+    } else if (json.get("method") != null) {
+      List<Consumer<Map<String, Object>>> eventListeners = listeners.get(json.get("method").toString());
+      if (eventListeners != null) {
+        Object params = json.get("params");
+        Map<String, Object> eventParams = params instanceof Map ? (Map<String, Object>) params : Map.of();
+        eventListeners.forEach(listener -> listener.accept(eventParams));
+      }
+    }
+  }
+
+  private void fail(long id, Throwable error) {
+    PendingCommand command = pendingCommands.remove(id);
+    if (command != null) {
+      command.result.completeExceptionally(error);
+    }
+  }
+
+  private void failAll(Throwable error) {
+    pendingCommands.keySet().forEach(id -> fail(id, error));
+  }
+
+  private static class PendingCommand {
+
+    private final String method;
+    private final CompletableFuture<Map<String, Object>> result = new CompletableFuture<>();
+
+    PendingCommand(String method) {
+      this.method = method;
+    }
+  }
+
+  private class Listener implements WebSocket.Listener {
+
+    private final StringBuilder message = new StringBuilder();
+
+    @Override
+    public CompletionStage<?> onText(WebSocket socket, CharSequence data, boolean last) {
+      message.append(data);
+      if (last) {
+        String text = message.toString();
+        message.setLength(0);
+        try {
+          onMessage(text);
+        } catch (RuntimeException ex) {
+          //a malformed message must not break the channel
+        }
+      }
+      socket.request(1);
+      return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket socket, int statusCode, String reason) {
+      abort(new WebDriverException("DevTools channel has been closed: " + statusCode + " " + reason));
+      return null;
+    }
+
+    @Override
+    public void onError(WebSocket socket, Throwable error) {
+      abort(new WebDriverException("DevTools channel failed", error));
+    }
+  }
+}
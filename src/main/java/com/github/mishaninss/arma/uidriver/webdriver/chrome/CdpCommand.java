@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver.chrome;
+
+import java.util.Map;
+
+/**
+ * DevTools command with its parameters, e.g. an item of a batch
+ *
+ * @author Sergey Mishanin
+ */
+public final class CdpCommand {
+
+  private final String method;
+  private final Map<String, Object> params;
+
+  private CdpCommand(String method, Map<String, Object> params) {
+    this.method = method;
+    this.params = params;
+  }
+
+  public static CdpCommand of(String method) {
+    return new CdpCommand(method, Map.of());
+  }
+
+  public static CdpCommand of(String method, Map<String, Object> params) {
+    return new CdpCommand(method, params);
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public Map<String, Object> getParams() {
+    return params;
+  }
+
+  @Override
+  public String toString() {
+    return method + " " + params;
+  }
+}
@@ -4,10 +4,13 @@ import com.github.mishaninss.arma.data.WebDriverProperties;
 import com.github.mishaninss.arma.exceptions.FrameworkConfigurationException;
 import com.github.mishaninss.arma.reporting.IReporter;
 import com.github.mishaninss.arma.reporting.Reporter;
+import com.github.mishaninss.arma.uidriver.webdriver.DriverBinaryResolver;
 import com.github.mishaninss.arma.uidriver.webdriver.ICapabilitiesProvider;
 import com.github.mishaninss.arma.uidriver.webdriver.IWebDriverCreator;
 import com.github.mishaninss.arma.uidriver.webdriver.NetworkConditions;
-import io.github.bonigarcia.wdm.WebDriverManager;
+import com.github.mishaninss.arma.uidriver.webdriver.profiling.SessionStartup;
+import com.github.mishaninss.arma.uidriver.webdriver.profiling.SessionStartup.Phase;
+import com.github.mishaninss.arma.uidriver.webdriver.profiling.SessionStartupProfiler;
 import io.github.bonigarcia.wdm.config.DriverManagerType;
 import java.net.URL;
 import java.util.concurrent.TimeUnit;
@@ -32,35 +35,54 @@ public class ChromeBrowserCreator implements IWebDriverCreator {
   @Autowired
   private ICapabilitiesProvider capabilitiesProvider;
   @Autowired
+  private DriverBinaryResolver driverBinaryResolver;
+  @Autowired
   private IChromeDriverServiceCreator chromeDriverServiceCreator;
+  @Autowired
+  private SessionStartupProfiler startupProfiler;
   @Reporter
   private IReporter reporter;
 
   @Override
   public WebDriver createDriver(Capabilities desiredCapabilities) {
     ExtendedChromeDriver webDriver;
+    SessionStartup startup = startupProfiler.start();
 
     Capabilities capabilities = capabilitiesProvider.getCapabilities();
     capabilities.merge(desiredCapabilities);
+    startup.lap(Phase.CAPABILITIES);
     reporter.debug("Final desired capabilities: %s", GSON.toJson(capabilities));
 
     try {
       if (properties.driver().isRemote()) {
         String gridUrl = properties.driver().gridUrl;
-        webDriver = new ExtendedChromeDriver(new URL(gridUrl), capabilities);
+        webDriver = new ExtendedChromeDriver(new URL(gridUrl), capabilities,
+            CommandTimeouts.fromProperties(properties.driver()));
         webDriver.setFileDetector(new LocalFileDetector());
+        startup.lap(Phase.NEW_SESSION);
       } else {
-        WebDriverManager.getInstance(DriverManagerType.CHROME).setup();
+        driverBinaryResolver.resolve(DriverManagerType.CHROME);
+        startup.lap(Phase.DRIVER_RESOLUTION);
         ChromeDriverService chromeDriverService = chromeDriverServiceCreator
             .getChromeDriverService();
-        if (!chromeDriverService.isRunning()) {
-          chromeDriverService.start();
+        try {
+          if (!chromeDriverService.isRunning()) {
+            chromeDriverService.start();
+          }
+          startup.lap(Phase.SERVICE_START);
+          webDriver = new ExtendedChromeDriver(chromeDriverService, capabilities,
+              CommandTimeouts.fromProperties(properties.driver()),
+              () -> chromeDriverServiceCreator.dismissChromeDriverService(chromeDriverService));
+        } catch (Exception ex) {
+          chromeDriverServiceCreator.dismissChromeDriverService(chromeDriverService);
+          throw ex;
         }
-        webDriver = new ExtendedChromeDriver(chromeDriverService, capabilities);
+        startup.lap(Phase.NEW_SESSION);
       }
       NetworkConditions networkConditions = properties.driver().getNetworkConditions();
       if (networkConditions != null) {
         webDriver.setNetworkConditions(networkConditions);
+        startup.lap(Phase.NETWORK_CONDITIONS);
       }
     } catch (Exception ex) {
       throw new FrameworkConfigurationException(COULD_NOT_START_SESSION_MESSAGE, ex);
@@ -70,6 +92,8 @@ public class ChromeBrowserCreator implements IWebDriverCreator {
         .implicitlyWait(properties.driver().timeoutsElement, TimeUnit.MILLISECONDS);
     webDriver.manage().timeouts()
         .pageLoadTimeout(properties.driver().timeoutsPageLoad, TimeUnit.MILLISECONDS);
+    startup.lap(Phase.TIMEOUTS);
+    startupProfiler.record(startup);
     return webDriver;
   }
 }
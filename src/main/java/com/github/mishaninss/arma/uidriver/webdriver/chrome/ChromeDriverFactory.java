@@ -17,6 +17,7 @@
 package com.github.mishaninss.arma.uidriver.webdriver.chrome;
 
 import com.github.mishaninss.arma.uidriver.webdriver.WebDriverFactory;
+import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.remote.SessionId;
@@ -41,18 +42,22 @@ public class ChromeDriverFactory extends WebDriverFactory {
      */
     @Override
     public void hardCloseDriver() {
+        WebDriver activeDriver = activeDriver();
         super.hardCloseDriver();
-        chromeDriverServiceCreator.terminateChrome();
+        if (activeDriver != null) {
+            chromeDriverServiceCreator.terminateChrome(activeDriver);
+        }
     }
 
     @Override
     public String getSessionId() {
-        if (!isBrowserStarted()) {
+        WebDriver activeDriver = activeDriver();
+        if (activeDriver == null) {
             return null;
         }
-        SessionId sessionId = driver instanceof RemoteWebDriver ?
-                ((RemoteWebDriver) driver).getSessionId() :
-                ((ChromeDriver) driver).getSessionId();
+        SessionId sessionId = activeDriver instanceof RemoteWebDriver ?
+                ((RemoteWebDriver) activeDriver).getSessionId() :
+                ((ChromeDriver) activeDriver).getSessionId();
 
         return sessionId.toString();
     }
@@ -16,21 +16,36 @@
 
 package com.github.mishaninss.arma.uidriver.webdriver.chrome;
 
-import org.apache.commons.exec.OS;
+import org.apache.commons.lang3.StringUtils;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.chrome.ChromeDriverService;
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import com.github.mishaninss.arma.reporting.IReporter;
 import com.github.mishaninss.arma.reporting.Reporter;
 
 import java.io.IOException;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
- * Provides a single instance of WebDriverService
+ * Provides instances of WebDriverService. By default every session gets its own service. In the
+ * shared mode a few long-lived services serve all the sessions of the JVM, and a session takes the
+ * least loaded one. A shared service left without sessions for the idle timeout is stopped.
  *
  * @author Sergey Mishanin
  */
@@ -41,46 +56,227 @@ public class ChromeDriverServiceCreatorImpl implements IChromeDriverServiceCreat
     @Reporter
     private IReporter reporter;
 
-    private static final AtomicBoolean useCliCleanup = new AtomicBoolean(true);
-    private volatile Set<ChromeDriverService> chromeDriverServices = new HashSet<>();
+    public static final String SHARED_SERVICE_PROPERTY = "arma.driver.chrome.service.shared";
+    public static final String SHARED_SERVICES_COUNT_PROPERTY = "arma.driver.chrome.service.shared.count";
+    public static final String SHARED_SERVICE_IDLE_TIMEOUT_PROPERTY = "arma.driver.chrome.service.shared.idle.timeout";
+
+    @Value("${" + SHARED_SERVICE_PROPERTY + ":false}")
+    private boolean sharedService;
+    @Value("${" + SHARED_SERVICES_COUNT_PROPERTY + ":1}")
+    private int sharedServicesCount;
+    @Value("${" + SHARED_SERVICE_IDLE_TIMEOUT_PROPERTY + ":60000}")
+    private long sharedServiceIdleTimeout;
+
+    private final Set<ChromeDriverService> chromeDriverServices = ConcurrentHashMap.newKeySet();
+    /**
+     * Number of sessions using each shared service. Guarded by this
+     */
+    private final Map<ChromeDriverService, Integer> sharedServices = new LinkedHashMap<>();
+    /**
+     * Start of idleness of each shared service without sessions. Guarded by this
+     */
+    private final Map<ChromeDriverService, Long> idleSince = new HashMap<>();
+    /**
+     * chromedriver process of each started service, recorded right after the start
+     */
+    private final Map<ChromeDriverService, ProcessHandle> driverProcesses = new ConcurrentHashMap<>();
 
     @Override
     public void destroy() {
         terminateChrome();
     }
 
+    /**
+     * @return a running service, so its chromedriver process is tracked from the start
+     */
     public ChromeDriverService getChromeDriverService() {
+        if (sharedService) {
+            return leaseSharedService();
+        }
+        return startChromeDriverService();
+    }
+
+    private ChromeDriverService startChromeDriverService() {
         ChromeDriverService chromeDriverService = new ChromeDriverService.Builder()
                 .withSilent(true)
                 .usingAnyFreePort()
                 .build();
         chromeDriverServices.add(chromeDriverService);
+        try {
+            chromeDriverService.start();
+        } catch (IOException ex) {
+            chromeDriverServices.remove(chromeDriverService);
+            throw new WebDriverException("Could not start chromedriver service", ex);
+        }
+        trackDriverProcess(chromeDriverService);
+        return chromeDriverService;
+    }
 
+    /**
+     * Remembers the chromedriver process of a just started service. Its port is held by the
+     * process, so no other running service has the same port argument
+     */
+    private void trackDriverProcess(ChromeDriverService chromeDriverService) {
+        String portArgument = "--port=" + chromeDriverService.getUrl().getPort();
+        Optional<ProcessHandle> driverProcess = ProcessHandle.current().children()
+                .filter(process -> hasArgument(process, portArgument))
+                .findFirst();
+        if (driverProcess.isPresent()) {
+            driverProcesses.put(chromeDriverService, driverProcess.get());
+        } else {
+            reporter.debug("Could not find chromedriver process of service %s", chromeDriverService.getUrl());
+        }
+    }
+
+    private synchronized ChromeDriverService leaseSharedService() {
+        sharedServices.keySet().removeIf(service -> {
+            if (service.isRunning()) {
+                return false;
+            }
+            chromeDriverServices.remove(service);
+            driverProcesses.remove(service);
+            idleSince.remove(service);
+            return true;
+        });
+        ChromeDriverService chromeDriverService;
+        if (sharedServices.size() < Math.max(1, sharedServicesCount)) {
+            chromeDriverService = startChromeDriverService();
+            reporter.debug("Started shared chromedriver service %s", chromeDriverService.getUrl());
+            sharedServices.put(chromeDriverService, 0);
+        } else {
+            chromeDriverService = Collections.min(sharedServices.entrySet(), Map.Entry.comparingByValue()).getKey();
+        }
+        sharedServices.merge(chromeDriverService, 1, Integer::sum);
+        idleSince.remove(chromeDriverService);
         return chromeDriverService;
     }
 
-    public void dismissChromeDriverService() {
-        //TODO this method is useless in the current implementation
+    /**
+     * Stops a dedicated service. A shared service only loses a session, and is stopped if it gets
+     * no new session within the idle timeout
+     */
+    @Override
+    public void dismissChromeDriverService(ChromeDriverService chromeDriverService) {
+        synchronized (this) {
+            Integer sessions = sharedServices.computeIfPresent(chromeDriverService,
+                    (service, count) -> Math.max(0, count - 1));
+            if (sessions != null) {
+                if (sessions == 0) {
+                    long idleStart = System.nanoTime();
+                    idleSince.put(chromeDriverService, idleStart);
+                    CompletableFuture.runAsync(() -> stopIdleService(chromeDriverService, idleStart),
+                            CompletableFuture.delayedExecutor(Math.max(0, sharedServiceIdleTimeout), TimeUnit.MILLISECONDS));
+                }
+                return;
+            }
+        }
+        if (chromeDriverServices.remove(chromeDriverService)) {
+            driverProcesses.remove(chromeDriverService);
+            chromeDriverService.stop();
+        }
+    }
+
+    /**
+     * Stops a shared service unless it has got a session since the given start of idleness
+     */
+    private void stopIdleService(ChromeDriverService chromeDriverService, long idleStart) {
+        synchronized (this) {
+            if (!Long.valueOf(idleStart).equals(idleSince.get(chromeDriverService))) {
+                return;
+            }
+            idleSince.remove(chromeDriverService);
+            sharedServices.remove(chromeDriverService);
+        }
+        reporter.debug("Stopping idle shared chromedriver service %s", chromeDriverService.getUrl());
+        terminate(chromeDriverService);
     }
 
     public void terminateChrome() {
-        chromeDriverServices.forEach(chromeDriverService -> {
-                    try {
-                        if (OS.isFamilyUnix() && useCliCleanup.get()) {
-                            int port = chromeDriverService.getUrl().getPort();
-                            String sh = "for drv in $(pgrep -f \"chromedriver --port=" + port + "\");do for p in $(pgrep -P $drv);do kill -KILL $p;done;kill -KILL $drv;done;";
-                            reporter.debug(sh);
-                            String[] command = {"/bin/bash", "-c", sh};
-                            Runtime.getRuntime().exec(command);
-                        }
-                    } catch (IOException e) {
-                        useCliCleanup.set(false);
-                        reporter.ignoredException(e);
-                    } finally {
-                        chromeDriverService.stop();
-                    }
-                }
-        );
-        chromeDriverServices.clear();
+        new ArrayList<>(chromeDriverServices).forEach(this::terminate);
+        synchronized (this) {
+            sharedServices.clear();
+            idleSince.clear();
+        }
+    }
+
+    /**
+     * Kills the browser of a single session. Only the browser processes of the session are killed
+     * if its service is shared, otherwise the whole service is terminated
+     */
+    @Override
+    public void terminateChrome(WebDriver driver) {
+        if (!(driver instanceof ExtendedChromeDriver)) {
+            return;
+        }
+        ChromeDriverService chromeDriverService = ((ExtendedChromeDriver) driver).getDriverService();
+        if (chromeDriverService == null) {
+            return;
+        }
+        boolean shared;
+        synchronized (this) {
+            shared = sharedServices.containsKey(chromeDriverService);
+        }
+        if (!shared) {
+            terminate(chromeDriverService);
+            return;
+        }
+        String userDataDir = getUserDataDir(driver);
+        if (StringUtils.isNotBlank(userDataDir)) {
+            String userDataDirArgument = "--user-data-dir=" + userDataDir;
+            findDriverProcess(chromeDriverService).ifPresent(driverProcess -> driverProcess.descendants()
+                    .filter(process -> hasArgument(process, userDataDirArgument))
+                    .collect(Collectors.toList())
+                    .forEach(this::destroyTree));
+        }
+        dismissChromeDriverService(chromeDriverService);
+    }
+
+    /**
+     * Kills the chromedriver process of the service together with all the browsers it has started.
+     * Only the first of concurrent calls for the same service does the cleanup
+     */
+    private void terminate(ChromeDriverService chromeDriverService) {
+        if (!chromeDriverServices.remove(chromeDriverService)) {
+            return;
+        }
+        try {
+            findDriverProcess(chromeDriverService).ifPresent(this::destroyTree);
+        } catch (Exception ex) {
+            reporter.ignoredException(ex);
+        } finally {
+            driverProcesses.remove(chromeDriverService);
+            chromeDriverService.stop();
+        }
+    }
+
+    private Optional<ProcessHandle> findDriverProcess(ChromeDriverService chromeDriverService) {
+        return Optional.ofNullable(driverProcesses.get(chromeDriverService)).filter(ProcessHandle::isAlive);
+    }
+
+    private void destroyTree(ProcessHandle root) {
+        List<ProcessHandle> descendants = root.descendants().collect(Collectors.toList());
+        reporter.debug("Kill process %d with %d descendants", root.pid(), descendants.size());
+        root.destroyForcibly();
+        descendants.forEach(ProcessHandle::destroyForcibly);
+    }
+
+    /**
+     * Compares whole arguments, so --port=5123 doesn't match --port=51234
+     */
+    private static boolean hasArgument(ProcessHandle process, String argument) {
+        ProcessHandle.Info info = process.info();
+        return info.arguments().map(arguments -> Arrays.asList(arguments).contains(argument))
+                .or(() -> info.commandLine().map(commandLine -> Arrays.asList(commandLine.split("\\s+")).contains(argument)))
+                .orElse(false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String getUserDataDir(WebDriver driver) {
+        Object chrome = ((ExtendedChromeDriver) driver).getCapabilities().getCapability("chrome");
+        if (chrome instanceof Map) {
+            Object userDataDir = ((Map<String, Object>) chrome).get("userDataDir");
+            return userDataDir != null ? userDataDir.toString() : null;
+        }
+        return null;
     }
-}
\ No newline at end of file
+}
@@ -17,36 +17,92 @@
 package com.github.mishaninss.arma.uidriver.webdriver.chrome;
 
 import org.apache.commons.io.FileUtils;
+import org.openqa.selenium.Rectangle;
 import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.remote.Command;
 import org.openqa.selenium.remote.Response;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import com.github.mishaninss.arma.data.UiCommonsProperties;
+import com.github.mishaninss.arma.reporting.IReporter;
+import com.github.mishaninss.arma.reporting.Reporter;
 import com.github.mishaninss.arma.uidriver.webdriver.IWebDriverFactory;
+import com.github.mishaninss.arma.uidriver.webdriver.ScreenshotOptions;
+import com.github.mishaninss.arma.uidriver.webdriver.ScreenshotPipeline;
 
 import javax.annotation.Nonnull;
+import javax.imageio.ImageIO;
 import javax.annotation.Nullable;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Component
 @Profile("chrome")
 public class ChromeExtender {
+    public static final String CDP_WEBSOCKET_PROPERTY = "arma.driver.chrome.cdp.websocket";
+    /**
+     * legacy - resize the viewport to the content size; beyond-viewport - capture the content
+     * beyond the viewport without resizing
+     */
+    public static final String SCREENSHOT_MODE_PROPERTY = "arma.driver.chrome.screenshot.mode";
+    public static final String SCREENSHOT_TILE_HEIGHT_PROPERTY = "arma.driver.chrome.screenshot.tile.height";
+    public static final String SCREENSHOT_MAX_HEIGHT_PROPERTY = "arma.driver.chrome.screenshot.max.height";
+    public static final String SCREENCAST_FPS_PROPERTY = "arma.driver.chrome.screencast.fps";
+    public static final String SCREENCAST_QUALITY_PROPERTY = "arma.driver.chrome.screencast.quality";
+    /**
+     * mjpeg - a single file of JPEG frames; frames - a directory with a JPEG file per frame
+     */
+    public static final String SCREENCAST_FORMAT_PROPERTY = "arma.driver.chrome.screencast.format";
+    public static final String LEGACY_MODE = "legacy";
+    public static final String BEYOND_VIEWPORT_MODE = "beyond-viewport";
     private static final String WIDTH = "width";
     private static final String HEIGHT = "height";
+    private static final Duration DEFAULT_CDP_TIMEOUT = Duration.ofMinutes(1);
 
     @Autowired
     private IWebDriverFactory webDriverFactory;
     @Autowired
     private UiCommonsProperties properties;
+    @Autowired
+    private ScreenshotPipeline screenshotPipeline;
+    @Reporter
+    private IReporter reporter;
+    @Value("${" + CDP_WEBSOCKET_PROPERTY + ":true}")
+    private boolean useCdpWebSocket;
+    @Value("${" + SCREENSHOT_MODE_PROPERTY + ":" + LEGACY_MODE + "}")
+    private String screenshotMode;
+    @Value("${" + SCREENSHOT_TILE_HEIGHT_PROPERTY + ":4096}")
+    private int tileHeight;
+    @Value("${" + SCREENSHOT_MAX_HEIGHT_PROPERTY + ":20000}")
+    private int maxScreenshotHeight;
+    @Value("${" + SCREENCAST_FPS_PROPERTY + ":5}")
+    private int screencastFps;
+    @Value("${" + SCREENCAST_QUALITY_PROPERTY + ":60}")
+    private int screencastQuality;
+    @Value("${" + SCREENCAST_FORMAT_PROPERTY + ":mjpeg}")
+    private String screencastFormat;
 
     public byte[] takeScreenshot() throws IOException {
+        if (isBeyondViewportMode()) {
+            return takeFullPageScreenshot();
+        }
         String image = takeScreenshotAsString();
         if (image == null) {
             return new byte[0];
@@ -56,54 +112,295 @@ public class ChromeExtender {
     }
 
     public String takeScreenshotAsString() throws IOException {
-        Object visibleSize = evaluate("({x:0,y:0,width:window.innerWidth,height:window.innerHeight})");
+        if (isBeyondViewportMode()) {
+            return takeFullPageScreenshotAsString();
+        }
+        return takeEmulatedScreenshotAsString();
+    }
+
+    /**
+     * Captures the whole page by resizing the emulated viewport to the page content
+     */
+    private String takeEmulatedScreenshotAsString() throws IOException {
+        //independent queries go in one batch, then all the emulation steps are pipelined
+        List<Object> metrics = sendBatch(List.of(
+                evaluateCommand("({x:0,y:0,width:window.innerWidth,height:window.innerHeight})"),
+                CdpCommand.of("Page.getLayoutMetrics")));
+        Object visibleSize = metrics.get(0);
         Long value = jsonValue(visibleSize, "result.value.width", Long.class);
         long visibleW = value != null ? value : 0;
         value = jsonValue(visibleSize, "result.value.height", Long.class);
         long visibleH = value != null ? value : 0;
 
-        Object contentSize = send("Page.getLayoutMetrics", new HashMap<>());
+        Object contentSize = metrics.get(1);
         value = jsonValue(contentSize, "contentSize.width", Long.class);
         long cw = value != null ? value : 0;
         value = jsonValue(contentSize, "contentSize.height", Long.class);
         long ch = value != null ? value : 0;
 
-        send("Emulation.setDeviceMetricsOverride",
-                Map.of(WIDTH, cw, HEIGHT, ch, "deviceScaleFactor", 1, "mobile", Boolean.FALSE, "fitWindow", Boolean.FALSE)
-        );
-        send("Emulation.setVisibleSize", Map.of(WIDTH, cw, HEIGHT, ch));
+        List<Object> results = sendBatch(List.of(
+                CdpCommand.of("Emulation.setDeviceMetricsOverride",
+                        Map.of(WIDTH, cw, HEIGHT, ch, "deviceScaleFactor", 1, "mobile", Boolean.FALSE, "fitWindow", Boolean.FALSE)),
+                CdpCommand.of("Emulation.setVisibleSize", Map.of(WIDTH, cw, HEIGHT, ch)),
+                CdpCommand.of("Page.captureScreenshot", Map.of("format", "png", "fromSurface", Boolean.TRUE)),
+                CdpCommand.of("Emulation.setVisibleSize", Map.of("x", 0, "y", 0, WIDTH, visibleW, HEIGHT, visibleH)),
+                CdpCommand.of("Emulation.clearDeviceMetricsOverride")));
+
+        return jsonValue(results.get(2), "data", String.class);
+    }
+
+    /**
+     * Captures the whole page without any emulation changes, so the page is not laid out again.
+     * Pages taller than a tile are captured tile by tile and encoded row by row, so no bitmap of
+     * the whole page is held in memory. The returned string still holds the whole encoded image,
+     * so memory grows with the page height; {@link #writeFullPageScreenshot(OutputStream)} and
+     * {@link #takeScreenshotAsFile()} keep it bounded.
+     *
+     * @see #writeFullPageScreenshot(OutputStream)
+     */
+    public String takeFullPageScreenshotAsString() throws IOException {
+        double[] size = getFullPageSize();
+        if (size[0] <= 0 || size[1] <= 0) {
+            return takeEmulatedScreenshotAsString();
+        }
+        if (size[1] <= tileHeight) {
+            return captureArea(0, size[0], size[1]);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream base64 = Base64.getEncoder().wrap(out)) {
+            stitchTiles(size, base64);
+        }
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+
+    public byte[] takeFullPageScreenshot() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeFullPageScreenshot(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a PNG image of the whole page to the stream. Only one tile is held in memory at a
+     * time, so pages of any height are captured in bounded memory. The stream is left open.
+     */
+    public void writeFullPageScreenshot(@Nonnull OutputStream out) throws IOException {
+        double[] size = getFullPageSize();
+        if (size[0] <= 0 || size[1] <= 0) {
+            ScreenshotPipeline.writeBase64(takeEmulatedScreenshotAsString(), Channels.newChannel(out));
+        } else if (size[1] <= tileHeight) {
+            ScreenshotPipeline.writeBase64(captureArea(0, size[0], size[1]), Channels.newChannel(out));
+        } else {
+            stitchTiles(size, out);
+        }
+    }
+
+    /**
+     * Captures the whole page tile by tile without any emulation changes. Only one tile is held in
+     * memory at a time, so the consumer may process pages of any height.
+     */
+    public void captureFullPageTiles(@Nonnull TileConsumer consumer) throws IOException {
+        captureTiles(getFullPageSize(), consumer);
+    }
 
-        Object screenshotResponse = send("Page.captureScreenshot", Map.of("format", "png", "fromSurface", Boolean.TRUE));
+    private void captureTiles(double[] size, TileConsumer consumer) throws IOException {
+        for (double y = 0; y < size[1]; y += tileHeight) {
+            String image = captureArea(y, size[0], Math.min(tileHeight, size[1] - y));
+            consumer.accept((long) y, image == null ? new byte[0] : Base64.getDecoder().decode(image));
+        }
+    }
 
-        send("Emulation.setVisibleSize", Map.of("x", 0, "y", 0, WIDTH, visibleW, HEIGHT, visibleH));
+    private void stitchTiles(double[] size, OutputStream out) throws IOException {
+        try (TileStitcher stitcher = new TileStitcher(size[0], size[1], out)) {
+            captureTiles(size, stitcher);
+        }
+    }
 
+    /**
+     * @return CSS width and height of the page content, not less than the viewport, the height
+     * limited by the max screenshot height. Zero if neither the content nor the viewport has a
+     * size, e.g. before the first layout
+     */
+    private double[] getFullPageSize() throws IOException {
+        Object metrics = send("Page.getLayoutMetrics", new HashMap<>());
+        Double width = jsonValue(metrics, "cssContentSize.width", Double.class);
+        Double height = jsonValue(metrics, "cssContentSize.height", Double.class);
+        if (width == null || height == null) {
+            width = jsonValue(metrics, "contentSize.width", Double.class);
+            height = jsonValue(metrics, "contentSize.height", Double.class);
+        }
+        Double viewportWidth = jsonValue(metrics, "cssLayoutViewport.clientWidth", Double.class);
+        Double viewportHeight = jsonValue(metrics, "cssLayoutViewport.clientHeight", Double.class);
+        if (viewportWidth == null || viewportHeight == null) {
+            viewportWidth = jsonValue(metrics, "layoutViewport.clientWidth", Double.class);
+            viewportHeight = jsonValue(metrics, "layoutViewport.clientHeight", Double.class);
+        }
+        //a page which is not laid out yet reports an empty content, which can't be clipped
+        width = Math.max(width != null ? width : 0, viewportWidth != null ? viewportWidth : 0);
+        height = Math.max(height != null ? height : 0, viewportHeight != null ? viewportHeight : 0);
+        if (height > maxScreenshotHeight) {
+            reporter.warn("Page height [%d] exceeds [%d] px set by %s, the screenshot is cut at the bottom",
+                    (long) Math.ceil(height), maxScreenshotHeight, SCREENSHOT_MAX_HEIGHT_PROPERTY);
+        }
+        return new double[]{Math.ceil(width), Math.min(Math.ceil(height), maxScreenshotHeight)};
+    }
+
+    private String captureArea(double y, double width, double height) throws IOException {
+        Object screenshotResponse = send("Page.captureScreenshot", Map.of(
+                "format", "png",
+                "fromSurface", Boolean.TRUE,
+                "captureBeyondViewport", Boolean.TRUE,
+                "clip", Map.of("x", 0, "y", y, WIDTH, width, HEIGHT, height, "scale", 1)));
         return jsonValue(screenshotResponse, "data", String.class);
     }
 
+    /**
+     * Captures a screenshot with the given options. Without a clip the whole page is captured, as by
+     * {@link #takeScreenshot()}; a clip is given in CSS pixels relative to the document.
+     */
+    public byte[] takeScreenshot(@Nonnull ScreenshotOptions options) throws IOException {
+        String image = takeScreenshotAsString(options);
+        return image == null ? new byte[0] : Base64.getDecoder().decode(image);
+    }
+
+    /**
+     * Captures a screenshot with the given options. Without a clip the whole page is captured, as by
+     * {@link #takeScreenshot()}; a clip is given in CSS pixels relative to the document.
+     */
+    public String takeScreenshotAsString(@Nonnull ScreenshotOptions options) throws IOException {
+        Rectangle clip = options.getClip();
+        Map<String, Object> area;
+        if (clip != null) {
+            area = Map.of("x", clip.getX(), "y", clip.getY(), WIDTH, clip.getWidth(), HEIGHT, clip.getHeight(),
+                    "scale", options.getScale());
+        } else {
+            double[] size = getFullPageSize();
+            //without a size to clip by, the visible area is captured
+            area = size[0] <= 0 || size[1] <= 0 ? null :
+                    Map.of("x", 0, "y", 0, WIDTH, size[0], HEIGHT, size[1], "scale", options.getScale());
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("format", options.getFormat().getName());
+        if (options.getFormat().isLossy()) {
+            params.put("quality", options.getQuality());
+        }
+        params.put("fromSurface", Boolean.TRUE);
+        params.put("captureBeyondViewport", Boolean.TRUE);
+        if (area != null) {
+            params.put("clip", area);
+        }
+        return jsonValue(send("Page.captureScreenshot", params), "data", String.class);
+    }
+
+    private boolean isBeyondViewportMode() {
+        return BEYOND_VIEWPORT_MODE.equalsIgnoreCase(screenshotMode);
+    }
+
+    /**
+     * Stores a screenshot to the screenshots directory. Unless deduplication is disabled, the file
+     * is stored in its {@value ScreenshotPipeline#HASH_DIR} subdirectory and named after the SHA-256
+     * of the image, so identical screenshots share one file.
+     *
+     * @see ScreenshotPipeline#store(ScreenshotPipeline.ImageSource, ScreenshotOptions.Format, File, String)
+     */
     public File takeScreenshotAsFile() throws IOException {
+        File screenshotFile;
+        if (isBeyondViewportMode()) {
+            //tiles go straight to the file, so a tall page is not held in memory
+            screenshotFile = screenshotPipeline.store(this::writeFullPageScreenshot, ScreenshotOptions.Format.PNG,
+                    getScreenshotsDir(), newFileName("Screenshot_"));
+        } else {
+            screenshotFile = screenshotPipeline.store(takeScreenshotAsString(), ScreenshotOptions.Format.PNG,
+                    getScreenshotsDir(), newFileName("Screenshot_"));
+        }
+        reporter.debug("Screenshot has been stored as %s", screenshotFile.getName());
+        return screenshotFile;
+    }
+
+    /**
+     * Grabs a screenshot on the calling thread and leaves decoding and writing to the
+     * {@link ScreenshotPipeline}
+     */
+    public CompletableFuture<File> takeScreenshotAsFileAsync() throws IOException {
+        return screenshotPipeline.storeAsync(takeScreenshotAsString(), ScreenshotOptions.Format.PNG,
+                getScreenshotsDir(), newFileName("Screenshot_"));
+    }
+
+    private File getScreenshotsDir() throws IOException {
         String screenshotsDir = properties.framework().screenshotsDir;
         File dir = new File(screenshotsDir);
         if (!dir.exists()) {
             FileUtils.forceMkdir(dir);
         }
-        String fileName = "Screenshot_" + new Date().getTime();
-        File screenshotFile = new File(dir, fileName);
-        FileUtils.writeByteArrayToFile(screenshotFile, takeScreenshot());
-        return screenshotFile;
+        return dir;
+    }
+
+    private static String newFileName(String prefix) {
+        return prefix + new Date().getTime();
+    }
+
+    /**
+     * Starts recording the current page of the current browser session into the screenshots
+     * directory. The recording must be stopped by {@link ChromeScreencast#stop(Duration)}.
+     */
+    @Nonnull
+    public ChromeScreencast startScreencast() throws IOException {
+        ChromeScreencast.Format format = ChromeScreencast.Format.of(screencastFormat);
+        File target = newScreencastFile(format);
+        return startScreencast((ExtendedChromeDriver) webDriverFactory.getDriver(), target, format);
+    }
+
+    /**
+     * Starts recording the current page of the given browser session. Frames are streamed over a
+     * DevTools channel, so the browser must be local.
+     *
+     * @param target - MJPEG file, or a directory for the frames
+     */
+    @Nonnull
+    public ChromeScreencast startScreencast(@Nonnull ExtendedChromeDriver driver, @Nonnull File target,
+                                            @Nonnull ChromeScreencast.Format format) throws IOException {
+        CdpChannel channel = getCdpChannel(driver);
+        if (channel == null) {
+            throw new WebDriverException("Screencast requires a DevTools channel to a local browser");
+        }
+        return ChromeScreencast.start(channel, target, format, screencastFps, screencastQuality, getCdpTimeout(),
+                reporter);
+    }
+
+    private File newScreencastFile(ChromeScreencast.Format format) throws IOException {
+        String fileName = newFileName("Screencast_");
+        if (format == ChromeScreencast.Format.MJPEG) {
+            fileName += ".mjpeg";
+        }
+        return new File(getScreenshotsDir(), fileName);
     }
 
     @Nonnull
-    private Object evaluate(@Nonnull String script) throws IOException {
+    private static CdpCommand evaluateCommand(@Nonnull String script) {
         Map<String, Object> param = new HashMap<>();
         param.put("returnByValue", Boolean.TRUE);
         param.put("expression", script);
-
-        return send("Runtime.evaluate", param);
+        return CdpCommand.of("Runtime.evaluate", param);
     }
 
     @Nonnull
     private Object send(@Nonnull String cmd, @Nonnull Map<String, Object> params) throws IOException {
-        ExtendedChromeDriver driver = (ExtendedChromeDriver) webDriverFactory.getDriver();
+        return send((ExtendedChromeDriver) webDriverFactory.getDriver(), cmd, params);
+    }
+
+    /**
+     * Sends a DevTools command to the given browser session
+     *
+     * @param driver - browser session
+     * @param cmd    - DevTools command name, e.g. Network.clearBrowserCache
+     * @param params - command parameters
+     * @return command result
+     */
+    @Nonnull
+    public Object send(@Nonnull ExtendedChromeDriver driver, @Nonnull String cmd, @Nonnull Map<String, Object> params) throws IOException {
+        CdpChannel channel = getCdpChannel(driver);
+        if (channel != null) {
+            return channel.send(cmd, params, getCdpTimeout());
+        }
         Map<String, Object> exe = Map.of("cmd", cmd, "params", params);
         Command xc = new Command(driver.getSessionId(), "sendCommandWithResult", exe);
         Response response = driver.getCommandExecutor().execute(xc);
@@ -117,6 +414,64 @@ public class ChromeExtender {
         return value;
     }
 
+    /**
+     * Sends a batch of DevTools commands to the current browser session
+     *
+     * @return results in the order of the commands
+     */
+    @Nonnull
+    public List<Object> sendBatch(@Nonnull List<CdpCommand> commands) throws IOException {
+        return sendBatch((ExtendedChromeDriver) webDriverFactory.getDriver(), commands);
+    }
+
+    /**
+     * Sends a batch of DevTools commands to the given browser session. Over a DevTools channel all
+     * the commands are sent without waiting for replies; the browser still executes them in order.
+     * Without a channel the commands are sent one by one through chromedriver.
+     *
+     * @return results in the order of the commands
+     */
+    @Nonnull
+    public List<Object> sendBatch(@Nonnull ExtendedChromeDriver driver, @Nonnull List<CdpCommand> commands) throws IOException {
+        List<Object> results = new ArrayList<>(commands.size());
+        CdpChannel channel = getCdpChannel(driver);
+        if (channel == null) {
+            for (CdpCommand command : commands) {
+                results.add(send(driver, command.getMethod(), command.getParams()));
+            }
+            return results;
+        }
+        List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<>(commands.size());
+        commands.forEach(command -> futures.add(channel.sendAsync(command.getMethod(), command.getParams())));
+        Duration timeout = getCdpTimeout();
+        for (int i = 0; i < commands.size(); i++) {
+            results.add(CdpChannel.await(commands.get(i).getMethod(), futures.get(i), timeout));
+        }
+        return results;
+    }
+
+    /**
+     * Provides a DevTools WebSocket channel of a local browser, or null if commands should go
+     * through chromedriver
+     */
+    @Nullable
+    private CdpChannel getCdpChannel(@Nonnull ExtendedChromeDriver driver) {
+        if (!useCdpWebSocket) {
+            return null;
+        }
+        try {
+            return driver.getCdpChannel(getCdpTimeout());
+        } catch (WebDriverException ex) {
+            reporter.debug("DevTools commands will be sent through chromedriver", ex);
+            return null;
+        }
+    }
+
+    private Duration getCdpTimeout() {
+        long timeout = properties.driver().timeoutsDriverOperation;
+        return timeout > 0 ? Duration.ofMillis(timeout) : DEFAULT_CDP_TIMEOUT;
+    }
+
     @Nullable
     @SuppressWarnings("unchecked")
     private static <T> T jsonValue(@Nonnull Object map, @Nonnull String path, @Nonnull Class<T> type) {
@@ -129,6 +484,76 @@ public class ChromeExtender {
                 return null;
             current = o;
         }
-        return (T) current;
+        return (T) toNumberType(current, type);
+    }
+
+    /**
+     * DevTools reports integral values as Long or Double depending on the transport and the page
+     */
+    private static Object toNumberType(Object value, Class<?> type) {
+        if (!(value instanceof Number) || type.isInstance(value)) {
+            return value;
+        }
+        Number number = (Number) value;
+        if (type == Long.class) {
+            return Math.round(number.doubleValue());
+        } else if (type == Integer.class) {
+            return (int) Math.round(number.doubleValue());
+        } else if (type == Double.class) {
+            return number.doubleValue();
+        }
+        return value;
+    }
+
+    /**
+     * Receives tiles of a full-page screenshot, from top to bottom
+     */
+    @FunctionalInterface
+    public interface TileConsumer {
+        /**
+         * @param offsetY - CSS offset of the tile from the top of the page
+         * @param image   - PNG image of the tile
+         */
+        void accept(long offsetY, byte[] image) throws IOException;
+    }
+
+    /**
+     * Encodes tiles into a single PNG image as they come. The image size is taken in device pixels
+     * of the first tile
+     */
+    private static class TileStitcher implements TileConsumer, Closeable {
+        private final double cssWidth;
+        private final double cssHeight;
+        private final OutputStream out;
+        private PngStreamWriter writer;
+        private double scale;
+
+        TileStitcher(double cssWidth, double cssHeight, OutputStream out) {
+            this.cssWidth = cssWidth;
+            this.cssHeight = cssHeight;
+            this.out = out;
+        }
+
+        @Override
+        public void accept(long offsetY, byte[] image) throws IOException {
+            BufferedImage tile = ImageIO.read(new ByteArrayInputStream(image));
+            if (tile == null) {
+                return;
+            }
+            if (writer == null) {
+                scale = cssWidth > 0 ? tile.getWidth() / cssWidth : 1;
+                writer = new PngStreamWriter(out, tile.getWidth(), (int) Math.ceil(cssHeight * scale));
+            }
+            //a tile which could not be captured is left blank
+            writer.padTo((int) Math.round(offsetY * scale));
+            writer.writeRows(tile);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
     }
 }
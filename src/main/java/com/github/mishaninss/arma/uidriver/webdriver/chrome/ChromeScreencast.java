@@ -0,0 +1,293 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver.chrome;
+
+import com.github.mishaninss.arma.reporting.IReporter;
+import com.github.mishaninss.arma.uidriver.webdriver.ScreenshotPipeline;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * Records the page of a DevTools channel as a stream of JPEG frames. Frames are acknowledged on
+ * the channel thread and written by a single background writer, either as an MJPEG file or as a
+ * sequence of images in a directory. Frames coming faster than the requested rate, or while the
+ * writer is behind, are dropped.
+ *
+ * <p>Recording stops when the channel is closed, e.g. on a window switch: the queued frames are
+ * written and the file is closed.
+ *
+ * @author Sergey Mishanin
+ */
+public class ChromeScreencast implements AutoCloseable {
+
+  public enum Format {
+    /**
+     * Concatenated JPEG frames in a single file
+     */
+    MJPEG,
+    /**
+     * One JPEG file per frame in a directory
+     */
+    FRAMES;
+
+    public static Format of(String name) {
+      return valueOf(name.trim().toUpperCase());
+    }
+  }
+
+  private static final String FRAME_EVENT = "Page.screencastFrame";
+  private static final int FRAMES_QUEUE_SIZE = 8;
+  private static final long STOP_TIMEOUT_SECONDS = 30;
+
+  private final CdpChannel channel;
+  private final File target;
+  private final Format format;
+  private final long frameIntervalNanos;
+  private final ThreadPoolExecutor writer;
+  private final IReporter reporter;
+  private final Consumer<Map<String, Object>> frameListener = this::onFrame;
+  private final Runnable closeListener = this::onChannelClosed;
+  private final AtomicInteger writtenFrames = new AtomicInteger();
+  private final AtomicInteger droppedFrames = new AtomicInteger();
+  private FileChannel output;
+  private long lastFrameNanos;
+  /**
+   * Number of the next frame file, accessed by the writer thread only
+   */
+  private int nextFrame = 1;
+  private boolean writeFailureReported;
+  private volatile boolean stopped;
+
+  private ChromeScreencast(CdpChannel channel, File target, Format format, int fps,
+      IReporter reporter) {
+    this.channel = channel;
+    this.target = target;
+    this.format = format;
+    this.reporter = reporter;
+    this.frameIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, fps);
+    this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(FRAMES_QUEUE_SIZE),
+        runnable -> {
+          Thread thread = new Thread(runnable, "arma-screencast-" + target.getName());
+          thread.setDaemon(true);
+          return thread;
+        },
+        (runnable, executor) -> droppedFrames.incrementAndGet()) {
+      @Override
+      protected void terminated() {
+        //the file is closed after the last queued frame, also when the channel closes on its own
+        closeOutputQuietly();
+      }
+    };
+  }
+
+  /**
+   * Starts a screencast of the channel page
+   *
+   * @param target  - MJPEG file, or a directory for the frames
+   * @param fps     - maximal number of frames written per second
+   * @param quality - JPEG quality, 0..100
+   * @param timeout  - timeout of the start command
+   * @param reporter - receives the first failure to write a frame
+   */
+  public static ChromeScreencast start(CdpChannel channel, File target, Format format, int fps,
+      int quality, Duration timeout, IReporter reporter) throws IOException {
+    ChromeScreencast screencast = new ChromeScreencast(channel, target, format, fps, reporter);
+    screencast.open();
+    channel.addListener(FRAME_EVENT, screencast.frameListener);
+    channel.addCloseListener(screencast.closeListener);
+    try {
+      channel.send("Page.startScreencast",
+          Map.of("format", "jpeg", "quality", Math.max(0, Math.min(100, quality))), timeout);
+    } catch (RuntimeException ex) {
+      channel.removeListener(FRAME_EVENT, screencast.frameListener);
+      channel.removeCloseListener(screencast.closeListener);
+      screencast.stopWriter();
+      throw ex;
+    }
+    return screencast;
+  }
+
+  private void open() throws IOException {
+    if (format == Format.FRAMES) {
+      Files.createDirectories(target.toPath());
+      return;
+    }
+    File dir = target.getAbsoluteFile().getParentFile();
+    if (dir != null) {
+      Files.createDirectories(dir.toPath());
+    }
+    output = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  /**
+   * Called on the channel thread, so it only acknowledges the frame and hands it to the writer
+   */
+  private void onFrame(Map<String, Object> params) {
+    Object sessionId = params.get("sessionId");
+    if (sessionId != null && !stopped) {
+      channel.sendAsync("Page.screencastFrameAck", Map.of("sessionId", sessionId));
+    }
+    Object data = params.get("data");
+    if (stopped || data == null) {
+      return;
+    }
+    long now = System.nanoTime();
+    synchronized (this) {
+      if (lastFrameNanos != 0 && now - lastFrameNanos < frameIntervalNanos) {
+        droppedFrames.incrementAndGet();
+        return;
+      }
+      lastFrameNanos = now;
+    }
+    String frame = data.toString();
+    writer.execute(() -> writeFrame(frame));
+  }
+
+  /**
+   * Called on the writer thread. A frame number is taken only by a written frame, so the frame
+   * files have no gaps, and a partly written MJPEG frame is cut off the file
+   */
+  private void writeFrame(String frame) {
+    long position = -1;
+    try {
+      if (format == Format.FRAMES) {
+        ScreenshotPipeline.writeBase64(frame,
+            new File(target, String.format("frame_%06d.jpg", nextFrame)));
+      } else {
+        position = output.position();
+        ScreenshotPipeline.writeBase64(frame, output);
+      }
+      nextFrame++;
+      writtenFrames.incrementAndGet();
+    } catch (IOException ex) {
+      droppedFrames.incrementAndGet();
+      discardPartialFrame(position);
+      if (!writeFailureReported) {
+        writeFailureReported = true;
+        reporter.warn("Could not write a frame of screencast [" + target
+            + "], failed frames are dropped", ex);
+      }
+    }
+  }
+
+  private void discardPartialFrame(long position) {
+    if (position < 0 || !output.isOpen()) {
+      return;
+    }
+    try {
+      output.truncate(position);
+      output.position(position);
+    } catch (IOException ex) {
+      //the next frame is written after the broken one
+    }
+  }
+
+  public File getTarget() {
+    return target;
+  }
+
+  public int getWrittenFrames() {
+    return writtenFrames.get();
+  }
+
+  public int getDroppedFrames() {
+    return droppedFrames.get();
+  }
+
+  /**
+   * Stops the screencast and waits for the queued frames to be written
+   *
+   * @return the MJPEG file or the directory of the frames
+   */
+  public File stop(Duration timeout) {
+    if (stopped) {
+      return target;
+    }
+    stopped = true;
+    channel.removeListener(FRAME_EVENT, frameListener);
+    channel.removeCloseListener(closeListener);
+    try {
+      if (channel.isOpen()) {
+        channel.send("Page.stopScreencast", Map.of(), timeout);
+      }
+    } finally {
+      stopWriter();
+    }
+    return target;
+  }
+
+  /**
+   * Called on the thread closing the channel, so it doesn't wait for the queued frames
+   */
+  private void onChannelClosed() {
+    stopped = true;
+    channel.removeListener(FRAME_EVENT, frameListener);
+    writer.shutdown();
+  }
+
+  private void stopWriter() {
+    stopped = true;
+    writer.shutdown();
+    try {
+      if (!writer.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        writer.shutdownNow();
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      writer.shutdownNow();
+    } finally {
+      closeOutput();
+    }
+  }
+
+  private void closeOutput() {
+    if (output == null) {
+      return;
+    }
+    try {
+      output.close();
+    } catch (IOException ex) {
+      throw new WebDriverException("Could not close screencast file " + target, ex);
+    }
+  }
+
+  private void closeOutputQuietly() {
+    try {
+      closeOutput();
+    } catch (WebDriverException ex) {
+      reporter.ignoredException(ex);
+    }
+  }
+
+  @Override
+  public void close() {
+    stop(Duration.ofSeconds(STOP_TIMEOUT_SECONDS));
+  }
+}
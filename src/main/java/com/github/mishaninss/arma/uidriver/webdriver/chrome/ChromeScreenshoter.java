@@ -16,13 +16,17 @@
 
 package com.github.mishaninss.arma.uidriver.webdriver.chrome;
 
+import com.github.mishaninss.arma.uidriver.webdriver.ScreenshotOptions;
 import com.github.mishaninss.arma.uidriver.webdriver.WdDefaultScreenshoter;
+import org.apache.commons.lang3.StringUtils;
 import org.openqa.selenium.OutputType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
 
 @Component
 @Profile("chrome")
@@ -31,6 +35,63 @@ public class ChromeScreenshoter extends WdDefaultScreenshoter {
     @Autowired
     private ChromeExtender chromeExtender;
 
+    /**
+     * Captures with the given options right in the browser, so the image is neither decoded nor
+     * encoded in the JVM
+     */
+    @Override
+    public byte[] takeScreenshot(ScreenshotOptions options) {
+        if (options.isDefault()) {
+            return takeScreenshot();
+        }
+        try {
+            return chromeExtender.takeScreenshot(options);
+        } catch (Exception ex) {
+            reporter.debug("Could not take a screenshot", ex);
+            return new byte[0];
+        }
+    }
+
+    @Override
+    public String takeScreenshotAsBase64(ScreenshotOptions options) {
+        if (options.isDefault()) {
+            return super.takeScreenshotAsBase64(options);
+        }
+        try {
+            return StringUtils.defaultString(chromeExtender.takeScreenshotAsString(options));
+        } catch (Exception ex) {
+            reporter.debug("Could not take a screenshot", ex);
+            return "";
+        }
+    }
+
+    @Override
+    protected String captureScreenshot(ScreenshotOptions options) {
+        try {
+            return options.isDefault() ?
+                    chromeExtender.takeScreenshotAsString() :
+                    chromeExtender.takeScreenshotAsString(options);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * The browser takes the clip in CSS pixels of the document as is
+     */
+    @Override
+    protected ScreenshotOptions toImageOptions(ScreenshotOptions options) {
+        return options;
+    }
+
+    /**
+     * Options are already applied by the browser, so the image is only decoded
+     */
+    @Override
+    protected byte[] processScreenshot(String screenshot, ScreenshotOptions options) {
+        return screenshot == null ? new byte[0] : Base64.getDecoder().decode(screenshot);
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     protected <X> X takeScreenshot(OutputType<X> seleniumOutputType) {
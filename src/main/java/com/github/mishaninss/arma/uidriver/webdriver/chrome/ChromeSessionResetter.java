@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver.chrome;
+
+import com.github.mishaninss.arma.uidriver.webdriver.WebDriverSessionResetter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Resets Chrome sessions through DevTools: clears all the cookies, the browser cache and all the
+ * storages, including cache storage and service workers, of every origin the session is known to
+ * have visited. Visited origins are collected from the pages, frames and workers of all the windows
+ * and from the navigation history of the current page. An origin visited only by pages which are
+ * neither open nor in that history, e.g. by a closed window, is not found, and its storages are
+ * kept.
+ */
+@Component
+@Profile("chrome")
+public class ChromeSessionResetter extends WebDriverSessionResetter {
+
+  private static final String ORIGIN_SCRIPT = "return window.location.origin;";
+
+  @Autowired
+  private ChromeExtender chromeExtender;
+
+  @Override
+  public void reset(WebDriver driver) {
+    if (!(driver instanceof ExtendedChromeDriver)) {
+      super.reset(driver);
+      return;
+    }
+    ExtendedChromeDriver chromeDriver = (ExtendedChromeDriver) driver;
+    Set<String> origins = getVisitedOrigins(chromeDriver);
+    closeExtraWindows(driver);
+    clearStorage(driver);
+    try {
+      for (String origin : origins) {
+        chromeExtender.send(chromeDriver, "Storage.clearDataForOrigin",
+            Map.of("origin", origin, "storageTypes", "all"));
+      }
+      chromeExtender.send(chromeDriver, "Network.clearBrowserCookies", Map.of());
+      chromeExtender.send(chromeDriver, "Network.clearBrowserCache", Map.of());
+    } catch (IOException ex) {
+      reporter.debug("Could not reset session through DevTools", ex);
+      driver.manage().deleteAllCookies();
+    }
+    driver.get(ABOUT_BLANK);
+  }
+
+  /**
+   * Collects origins of all the targets of the browser and of the navigation history of the
+   * current page. Must be called before extra windows are closed
+   */
+  private Set<String> getVisitedOrigins(ExtendedChromeDriver driver) {
+    Set<String> origins = new LinkedHashSet<>();
+    addOrigin(origins, getOrigin(driver));
+    try {
+      getUrls(chromeExtender.send(driver, "Target.getTargets", Map.of()), "targetInfos")
+          .forEach(url -> addOrigin(origins, url));
+      getUrls(chromeExtender.send(driver, "Page.getNavigationHistory", Map.of()), "entries")
+          .forEach(url -> addOrigin(origins, url));
+    } catch (IOException | RuntimeException ex) {
+      reporter.debug("Could not collect origins visited by the session", ex);
+    }
+    return origins;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<String> getUrls(Object result, String listName) {
+    Object items = result instanceof Map ? ((Map<String, Object>) result).get(listName) : null;
+    if (!(items instanceof List)) {
+      return List.of();
+    }
+    List<String> urls = new ArrayList<>();
+    for (Object item : (List<Object>) items) {
+      Object url = item instanceof Map ? ((Map<String, Object>) item).get("url") : null;
+      if (url != null) {
+        urls.add(url.toString());
+      }
+    }
+    return urls;
+  }
+
+  private static void addOrigin(Set<String> origins, String url) {
+    if (!StringUtils.startsWith(url, "http")) {
+      return;
+    }
+    try {
+      URI uri = new URI(url);
+      if (uri.getHost() != null) {
+        origins.add(uri.getScheme() + "://" + uri.getHost()
+            + (uri.getPort() != -1 ? ":" + uri.getPort() : ""));
+      }
+    } catch (URISyntaxException ex) {
+      //not a page origin
+    }
+  }
+
+  private String getOrigin(WebDriver driver) {
+    try {
+      Object origin = ((JavascriptExecutor) driver).executeScript(ORIGIN_SCRIPT);
+      return origin != null ? origin.toString() : null;
+    } catch (Exception ex) {
+      reporter.ignoredException(ex);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver.chrome;
+
+import com.github.mishaninss.arma.data.WebDriverProperties;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.http.HttpClient;
+
+/**
+ * Read and connect timeouts of the HTTP client used by the command executors. Timeouts may be
+ * overridden per WebDriver command, e.g. longer for {@code get} and shorter for
+ * {@code findElement}.
+ *
+ * @author Sergey Mishanin
+ */
+public final class CommandTimeouts {
+
+  private static final Duration MIN_NEW_SESSION_TIMEOUT = Duration.ofMinutes(2);
+  private static final ThreadLocal<String> CURRENT_COMMAND = new ThreadLocal<>();
+
+  private final Duration connectTimeout;
+  private final Duration readTimeout;
+  private final Map<String, Duration> commandTimeouts;
+
+  private CommandTimeouts(Duration connectTimeout, Duration readTimeout,
+      Map<String, Duration> commandTimeouts) {
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+    this.commandTimeouts = commandTimeouts;
+  }
+
+  /**
+   * Timeouts of the default Selenium HTTP client
+   */
+  public static CommandTimeouts disabled() {
+    return new CommandTimeouts(null, null, Map.of());
+  }
+
+  public static CommandTimeouts fromProperties(WebDriverProperties.Driver properties) {
+    if (!properties.useHttpClientTimeouts()) {
+      return disabled();
+    }
+    Duration readTimeout = Duration.ofMillis(properties.timeoutsDriverOperation);
+    Map<String, Duration> commandTimeouts = new HashMap<>();
+    if (readTimeout.compareTo(MIN_NEW_SESSION_TIMEOUT) < 0) {
+      commandTimeouts.put(DriverCommand.NEW_SESSION, MIN_NEW_SESSION_TIMEOUT);
+    }
+    properties.getCommandTimeouts()
+        .forEach((command, timeout) -> commandTimeouts.put(command, Duration.ofMillis(timeout)));
+    return new CommandTimeouts(Duration.ofMillis(properties.timeoutsConnect), readTimeout,
+        commandTimeouts);
+  }
+
+  public boolean isEnabled() {
+    return readTimeout != null;
+  }
+
+  public Duration getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  /**
+   * Returns read timeout for the command
+   *
+   * @param commandName - name of a WebDriver command, see {@link DriverCommand}
+   */
+  public Duration getReadTimeout(String commandName) {
+    if (commandName == null) {
+      return readTimeout;
+    }
+    return commandTimeouts.getOrDefault(commandName, readTimeout);
+  }
+
+  /**
+   * @return true if the command has a read timeout of its own
+   */
+  public boolean isOverridden(String commandName) {
+    return isEnabled() && commandName != null && commandTimeouts.containsKey(commandName);
+  }
+
+  HttpClient.Factory createHttpClientFactory() {
+    return new CommandTimeoutsHttpClientFactory(HttpClient.Factory.createDefault(), this);
+  }
+
+  static String currentCommand() {
+    return CURRENT_COMMAND.get();
+  }
+
+  /**
+   * Executes a command, so the HTTP client could pick the read timeout of this command
+   */
+  static <T> T executeCommand(String commandName, CommandCall<T> call) throws IOException {
+    String previous = CURRENT_COMMAND.get();
+    CURRENT_COMMAND.set(commandName);
+    try {
+      return call.call();
+    } finally {
+      if (previous == null) {
+        CURRENT_COMMAND.remove();
+      } else {
+        CURRENT_COMMAND.set(previous);
+      }
+    }
+  }
+
+  @FunctionalInterface
+  interface CommandCall<T> {
+
+    T call() throws IOException;
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver.chrome;
+
+import com.github.mishaninss.arma.aspects.DriverOperationWatchdog;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.remote.http.ClientConfig;
+import org.openqa.selenium.remote.http.HttpClient;
+import org.openqa.selenium.remote.http.HttpRequest;
+import org.openqa.selenium.remote.http.HttpResponse;
+import org.openqa.selenium.remote.http.WebSocket;
+
+/**
+ * Creates HTTP clients which apply read timeout of the currently executed WebDriver command. A
+ * separate underlying client is created for every distinct timeout, so a timed out request is
+ * aborted by the client itself and its connection is released immediately.
+ *
+ * <p>A request may run past the driver operation timeout up to its own read timeout. A command
+ * with an overridden timeout fails with a plain {@link TimeoutException}, so the session is not
+ * considered lost.
+ *
+ * <p>Every request is registered with the {@link DriverOperationWatchdog}: if the driver operation
+ * timeout expires first, the underlying client is closed, so the request fails even if its read
+ * ignores interrupts. Other requests of the same driver sent through that client at the moment
+ * fail too.
+ *
+ * @author Sergey Mishanin
+ */
+class CommandTimeoutsHttpClientFactory implements HttpClient.Factory {
+
+  /**
+   * Key of the client with the default read timeout of Selenium
+   */
+  private static final Duration DEFAULT_READ_TIMEOUT = Duration.ZERO;
+
+  private final HttpClient.Factory delegate;
+  private final CommandTimeouts timeouts;
+
+  CommandTimeoutsHttpClientFactory(HttpClient.Factory delegate, CommandTimeouts timeouts) {
+    this.delegate = delegate;
+    this.timeouts = timeouts;
+  }
+
+  @Override
+  public HttpClient createClient(ClientConfig config) {
+    Duration connectTimeout = timeouts.getConnectTimeout();
+    return new CommandTimeoutsHttpClient(
+        connectTimeout != null ? config.connectionTimeout(connectTimeout) : config);
+  }
+
+  @Override
+  public void cleanupIdleClients() {
+    delegate.cleanupIdleClients();
+  }
+
+  private class CommandTimeoutsHttpClient implements HttpClient {
+
+    private final ClientConfig config;
+    private final Map<Duration, HttpClient> clients = new ConcurrentHashMap<>();
+
+    CommandTimeoutsHttpClient(ClientConfig config) {
+      this.config = config;
+    }
+
+    private HttpClient getClient(Duration readTimeout) {
+      return clients.computeIfAbsent(readTimeout != null ? readTimeout : DEFAULT_READ_TIMEOUT,
+          timeout -> delegate.createClient(readTimeout != null ? config.readTimeout(timeout) : config));
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) {
+      String command = CommandTimeouts.currentCommand();
+      Duration readTimeout = timeouts.getReadTimeout(command);
+      HttpClient client = getClient(readTimeout);
+      DriverOperationWatchdog watchdog = DriverOperationWatchdog.getInstance();
+      try (DriverOperationWatchdog.Registration extension = extend(watchdog, readTimeout);
+          DriverOperationWatchdog.Registration abort = watchdog.onExpiry(() -> abort(client))) {
+        return client.execute(request);
+      } catch (RuntimeException ex) {
+        if (timeouts.isOverridden(command) && isReadTimeout(ex)) {
+          //a short timeout of a single command doesn't mean the session is lost
+          throw new TimeoutException(String.format("Command [%s] has not completed in [%d] ms",
+              command, readTimeout.toMillis()));
+        }
+        throw ex;
+      }
+    }
+
+    /**
+     * Lets the request run up to its read timeout even if the driver operation timeout is shorter
+     */
+    private DriverOperationWatchdog.Registration extend(DriverOperationWatchdog watchdog,
+        Duration readTimeout) {
+      if (readTimeout == null) {
+        return () -> {
+        };
+      }
+      Duration connectTimeout = timeouts.getConnectTimeout();
+      return watchdog.extend(
+          (connectTimeout != null ? readTimeout.plus(connectTimeout) : readTimeout).toMillis());
+    }
+
+    private boolean isReadTimeout(RuntimeException ex) {
+      return ExceptionUtils.indexOfThrowable(ex, java.util.concurrent.TimeoutException.class) >= 0
+          || ExceptionUtils.indexOfThrowable(ex, SocketTimeoutException.class) >= 0;
+    }
+
+    /**
+     * Closes the client of a request which has outlived the driver operation timeout
+     */
+    private void abort(HttpClient client) {
+      clients.values().remove(client);
+      client.close();
+    }
+
+    @Override
+    public WebSocket openSocket(HttpRequest request, WebSocket.Listener listener) {
+      return getClient(timeouts.getReadTimeout(null)).openSocket(request, listener);
+    }
+
+    @Override
+    public void close() {
+      clients.values().forEach(HttpClient::close);
+      clients.clear();
+    }
+  }
+}
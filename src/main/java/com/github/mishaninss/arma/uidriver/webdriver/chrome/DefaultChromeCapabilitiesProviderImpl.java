@@ -7,9 +7,19 @@ import com.github.mishaninss.arma.uidriver.interfaces.IDownloadsManager;
 import com.github.mishaninss.arma.uidriver.webdriver.DesiredCapabilitiesLoader;
 import com.github.mishaninss.arma.uidriver.webdriver.ICapabilitiesProvider;
 import com.github.mishaninss.arma.utils.FileUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -27,16 +37,18 @@ import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.logging.LogType;
 import org.openqa.selenium.logging.LoggingPreferences;
 import org.openqa.selenium.remote.CapabilityType;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
 import static com.github.mishaninss.arma.data.DataObject.GSON;
 
 @Component
 @Profile("chrome")
-public class DefaultChromeCapabilitiesProviderImpl implements ICapabilitiesProvider {
+public class DefaultChromeCapabilitiesProviderImpl implements ICapabilitiesProvider, DisposableBean {
 
   public static final String CAPABILITIES_PROPERTY_PREFIX = "arma.driver.chrome.capability.";
   public static final String CAPABILITIES_FILE_PROPERTY = "arma.driver.chrome.capabilities.file";
@@ -55,6 +67,12 @@ public class DefaultChromeCapabilitiesProviderImpl implements ICapabilitiesProvi
   private IReporter reporter;
   @Autowired
   private IDownloadsManager downloadsManager;
+  @Autowired
+  private Environment environment;
+
+  private volatile CachedCapabilities cached;
+  private volatile boolean fileChanged;
+  private WatchService watchService;
 
   private ChromeOptions getChromeOptions() {
     var chromeOptions = new ChromeOptions();
@@ -141,19 +159,145 @@ public class DefaultChromeCapabilitiesProviderImpl implements ICapabilitiesProvi
     }
   }
 
+  /**
+   * Returns a copy of the effective capabilities. They are assembled once and reused until the
+   * capabilities file or a relevant property changes, or the cache is invalidated explicitly
+   */
   @Override
   public Capabilities getCapabilities() {
+    CachedCapabilities current = cached;
+    if (current == null || fileChanged || !current.key.equals(getCacheKey(current.environmentPropertyNames))) {
+      synchronized (this) {
+        current = cached;
+        if (current == null || fileChanged || !current.key.equals(getCacheKey(current.environmentPropertyNames))) {
+          watchCapabilitiesFile();
+          fileChanged = false;
+          current = buildCapabilities();
+          cached = current;
+        }
+      }
+    }
+    return new MutableCapabilities(deepCopy(current.capabilities.asMap()));
+  }
+
+  /**
+   * Drops the cached capabilities, e.g. after new capability properties have been added to the
+   * Environment
+   */
+  public void invalidate() {
+    cached = null;
+  }
+
+  @Override
+  public void destroy() throws IOException {
+    if (watchService != null) {
+      watchService.close();
+    }
+  }
+
+  private CachedCapabilities buildCapabilities() {
+    Set<String> environmentPropertyNames = capabilitiesLoader.findEnvironmentPropertyNames(
+        DesiredCapabilitiesLoader.CAPABILITIES_PROPERTY_PREFIX, CAPABILITIES_PROPERTY_PREFIX);
     MutableCapabilities capabilities = properties.driver().isRemote() ?
         getGridCapabilities() :
         getChromeCapabilities();
     capabilities = mergeCapabilities(
         capabilitiesLoader.loadCapabilities(capabilitiesFile, ChromeOptions.class), capabilities);
     capabilities = mergeCapabilities(
-        capabilitiesLoader.loadEnvironmentProperties(ChromeOptions.class), capabilities);
+        capabilitiesLoader.loadEnvironmentProperties(environmentPropertyNames,
+            DesiredCapabilitiesLoader.CAPABILITIES_PROPERTY_PREFIX, ChromeOptions.class), capabilities);
     capabilities = mergeCapabilities(
-        capabilitiesLoader.loadEnvironmentProperties(CAPABILITIES_PROPERTY_PREFIX,
-            ChromeOptions.class), capabilities);
-    return capabilities;
+        capabilitiesLoader.loadEnvironmentProperties(environmentPropertyNames,
+            CAPABILITIES_PROPERTY_PREFIX, ChromeOptions.class), capabilities);
+    return new CachedCapabilities(getCacheKey(environmentPropertyNames), environmentPropertyNames,
+        capabilities);
+  }
+
+  /**
+   * Collects values of everything the capabilities are built from, except the capabilities file
+   * which is watched separately
+   */
+  private List<Object> getCacheKey(Set<String> environmentPropertyNames) {
+    WebDriverProperties.Driver driver = properties.driver();
+    List<Object> key = new ArrayList<>(Arrays.asList(
+        driver.isRemote(), driver.collectTracingLogs, driver.collectNetworkLogs,
+        driver.areConsoleLogsEnabled(), driver.browserLogsLevel, driver.browserVersion,
+        driver.platformName, driver.unexpectedAlertBehaviour, capabilitiesFile, extensions,
+        downloadsManager.getDownloadsDir()));
+    environmentPropertyNames.forEach(name -> key.add(environment.getProperty(name)));
+    return key;
+  }
+
+  private void watchCapabilitiesFile() {
+    if (watchService != null || StringUtils.isBlank(capabilitiesFile)) {
+      return;
+    }
+    File file = capabilitiesLoader.getCapabilitiesFile(capabilitiesFile).getAbsoluteFile();
+    File dir = file.getParentFile();
+    if (dir == null || !dir.isDirectory()) {
+      return;
+    }
+    try {
+      WatchService service = FileSystems.getDefault().newWatchService();
+      dir.toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+      Thread watcher = new Thread(() -> watch(service, file.getName()), "arma-capabilities-watcher");
+      watcher.setDaemon(true);
+      watcher.start();
+      watchService = service;
+    } catch (IOException ex) {
+      reporter.ignoredException(ex);
+    }
+  }
+
+  private void watch(WatchService service, String fileName) {
+    try {
+      while (true) {
+        WatchKey watchKey = service.take();
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+          if (event.kind() == StandardWatchEventKinds.OVERFLOW
+              || fileName.equals(String.valueOf(event.context()))) {
+            fileChanged = true;
+          }
+        }
+        if (!watchKey.reset()) {
+          return;
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException ex) {
+      //context is closed
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T deepCopy(T value) {
+    if (value instanceof Map) {
+      Map<String, Object> copy = new LinkedHashMap<>();
+      ((Map<String, Object>) value).forEach((key, item) -> copy.put(key, deepCopy(item)));
+      return (T) copy;
+    }
+    if (value instanceof Collection) {
+      List<Object> copy = new ArrayList<>();
+      ((Collection<Object>) value).forEach(item -> copy.add(deepCopy(item)));
+      return (T) copy;
+    }
+    return value;
+  }
+
+  private static class CachedCapabilities {
+
+    private final List<Object> key;
+    private final Set<String> environmentPropertyNames;
+    private final MutableCapabilities capabilities;
+
+    CachedCapabilities(List<Object> key, Set<String> environmentPropertyNames,
+        MutableCapabilities capabilities) {
+      this.key = key;
+      this.environmentPropertyNames = environmentPropertyNames;
+      this.capabilities = capabilities;
+    }
   }
 
   public static MutableCapabilities mergeCapabilities(Capabilities from, MutableCapabilities to) {
@@ -16,7 +16,12 @@
 
 package com.github.mishaninss.arma.uidriver.webdriver.chrome;
 
+import org.openqa.selenium.Alert;
 import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.WindowType;
 import org.openqa.selenium.chrome.ChromeDriverService;
 import org.openqa.selenium.html5.*;
 import org.openqa.selenium.interactions.HasTouchScreen;
@@ -29,7 +34,9 @@ import org.openqa.selenium.remote.html5.RemoteWebStorage;
 import org.openqa.selenium.remote.mobile.RemoteNetworkConnection;
 import com.github.mishaninss.arma.uidriver.webdriver.NetworkConditions;
 
+import java.io.IOException;
 import java.net.URL;
+import java.time.Duration;
 import java.util.Map;
 
 public class ExtendedChromeDriver extends RemoteWebDriver implements LocationContext, WebStorage, HasTouchScreen, NetworkConnection {
@@ -37,13 +44,34 @@ public class ExtendedChromeDriver extends RemoteWebDriver implements LocationCon
     private RemoteWebStorage webStorage;
     private TouchScreen touchScreen;
     private RemoteNetworkConnection networkConnection;
+    private ChromeDriverService driverService;
+    private static final long CDP_CHANNEL_RETRY_MILLIS = 1000;
+    private static final long MAX_CDP_CHANNEL_RETRY_MILLIS = 60000;
+
+    private CdpChannel cdpChannel;
+    private boolean cdpChannelUnavailable;
+    private int cdpChannelFailures;
+    private long cdpChannelRetryAt;
 
     public ExtendedChromeDriver(Capabilities capabilities) {
         this(ChromeDriverService.createDefaultService(), capabilities);
     }
 
     public ExtendedChromeDriver(ChromeDriverService service, Capabilities capabilities) {
-        super(new ExtendedChromeDriverCommandExecutor(service), capabilities);
+        this(service, capabilities, CommandTimeouts.disabled());
+    }
+
+    public ExtendedChromeDriver(ChromeDriverService service, Capabilities capabilities, CommandTimeouts timeouts) {
+        this(service, capabilities, timeouts, service::stop);
+    }
+
+    /**
+     * @param onQuit - called on quit instead of stopping the service
+     */
+    public ExtendedChromeDriver(ChromeDriverService service, Capabilities capabilities, CommandTimeouts timeouts,
+                                Runnable onQuit) {
+        super(new ExtendedChromeDriverCommandExecutor(service, timeouts, onQuit), capabilities);
+        this.driverService = service;
         this.locationContext = new RemoteLocationContext(this.getExecuteMethod());
         this.webStorage = new RemoteWebStorage(this.getExecuteMethod());
         this.touchScreen = new RemoteTouchScreen(this.getExecuteMethod());
@@ -51,13 +79,127 @@ public class ExtendedChromeDriver extends RemoteWebDriver implements LocationCon
     }
 
     public ExtendedChromeDriver(URL remoteAddress, Capabilities desiredCapabilities) {
-        super(new ExtendedChromeDriverHttpCommandExecutor(remoteAddress), desiredCapabilities);
+        this(remoteAddress, desiredCapabilities, CommandTimeouts.disabled());
+    }
+
+    public ExtendedChromeDriver(URL remoteAddress, Capabilities desiredCapabilities, CommandTimeouts timeouts) {
+        super(new ExtendedChromeDriverHttpCommandExecutor(remoteAddress, timeouts), desiredCapabilities);
         this.locationContext = new RemoteLocationContext(this.getExecuteMethod());
         this.webStorage = new RemoteWebStorage(this.getExecuteMethod());
         this.touchScreen = new RemoteTouchScreen(this.getExecuteMethod());
         this.networkConnection = new RemoteNetworkConnection(this.getExecuteMethod());
     }
 
+    /**
+     * Returns the local service of this driver, or null for a remote driver
+     */
+    public ChromeDriverService getDriverService() {
+        return driverService;
+    }
+
+    /**
+     * Provides a DevTools channel to the current page of a local browser. The channel is opened on
+     * the first call and closed on quit. A failed connection is retried after a backoff growing up
+     * to a minute, meanwhile commands should go through chromedriver.
+     *
+     * @return the channel, or null if the browser is remote or its debugger is not reachable
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized CdpChannel getCdpChannel(Duration timeout) {
+        if (cdpChannel != null && cdpChannel.isOpen()) {
+            return cdpChannel;
+        }
+        if (driverService == null || cdpChannelUnavailable || System.currentTimeMillis() < cdpChannelRetryAt) {
+            return null;
+        }
+        Object chromeOptions = getCapabilities().getCapability("goog:chromeOptions");
+        Object debuggerAddress = chromeOptions instanceof Map ?
+                ((Map<String, Object>) chromeOptions).get("debuggerAddress") : null;
+        if (debuggerAddress == null) {
+            cdpChannelUnavailable = true;
+            return null;
+        }
+        try {
+            cdpChannel = CdpChannel.connect(debuggerAddress.toString(), getWindowHandle(), timeout);
+        } catch (IOException | RuntimeException ex) {
+            long backoff = Math.min(MAX_CDP_CHANNEL_RETRY_MILLIS,
+                    CDP_CHANNEL_RETRY_MILLIS << Math.min(cdpChannelFailures++, 16));
+            cdpChannelRetryAt = System.currentTimeMillis() + backoff;
+            throw new WebDriverException("Could not open DevTools channel, retry in " + backoff + " ms", ex);
+        }
+        cdpChannelFailures = 0;
+        return cdpChannel;
+    }
+
+    private synchronized void closeCdpChannel() {
+        if (cdpChannel != null) {
+            cdpChannel.close();
+            cdpChannel = null;
+        }
+    }
+
+    @Override
+    public void quit() {
+        closeCdpChannel();
+        super.quit();
+    }
+
+    /**
+     * Closes the DevTools channel on a window switch, so it is reopened to the new current page
+     */
+    @Override
+    public TargetLocator switchTo() {
+        TargetLocator targetLocator = super.switchTo();
+        return new TargetLocator() {
+            @Override
+            public WebDriver frame(int index) {
+                return targetLocator.frame(index);
+            }
+
+            @Override
+            public WebDriver frame(String nameOrId) {
+                return targetLocator.frame(nameOrId);
+            }
+
+            @Override
+            public WebDriver frame(WebElement frameElement) {
+                return targetLocator.frame(frameElement);
+            }
+
+            @Override
+            public WebDriver parentFrame() {
+                return targetLocator.parentFrame();
+            }
+
+            @Override
+            public WebDriver window(String nameOrHandle) {
+                closeCdpChannel();
+                return targetLocator.window(nameOrHandle);
+            }
+
+            @Override
+            public WebDriver newWindow(WindowType typeHint) {
+                closeCdpChannel();
+                return targetLocator.newWindow(typeHint);
+            }
+
+            @Override
+            public WebDriver defaultContent() {
+                return targetLocator.defaultContent();
+            }
+
+            @Override
+            public WebElement activeElement() {
+                return targetLocator.activeElement();
+            }
+
+            @Override
+            public Alert alert() {
+                return targetLocator.alert();
+            }
+        };
+    }
+
     @Override
     public LocalStorage getLocalStorage() {
         return this.webStorage.getLocalStorage();
@@ -16,18 +16,63 @@
 
 package com.github.mishaninss.arma.uidriver.webdriver.chrome;
 
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.Command;
 import org.openqa.selenium.remote.CommandInfo;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.Response;
 import org.openqa.selenium.remote.http.HttpMethod;
-import org.openqa.selenium.remote.service.DriverCommandExecutor;
 import org.openqa.selenium.remote.service.DriverService;
 
+import java.io.IOException;
 import java.util.Map;
 
-class ExtendedChromeDriverCommandExecutor extends DriverCommandExecutor {
+/**
+ * Executes commands against a local driver service. Starts the service on a new session request and
+ * stops it on quit, like {@link org.openqa.selenium.remote.service.DriverCommandExecutor} does, but
+ * sends commands through an HTTP client with per-command timeouts.
+ */
+class ExtendedChromeDriverCommandExecutor extends HttpCommandExecutor {
     private static final Map<String, CommandInfo> CHROME_COMMAND_NAME_TO_URL;
 
+    private final DriverService service;
+    private final Runnable onQuit;
+
     ExtendedChromeDriverCommandExecutor(DriverService service) {
-        super(service, CHROME_COMMAND_NAME_TO_URL);
+        this(service, CommandTimeouts.disabled());
+    }
+
+    ExtendedChromeDriverCommandExecutor(DriverService service, CommandTimeouts timeouts) {
+        this(service, timeouts, service::stop);
+    }
+
+    /**
+     * @param onQuit - called instead of stopping the service on quit, e.g. to release a shared service
+     */
+    ExtendedChromeDriverCommandExecutor(DriverService service, CommandTimeouts timeouts, Runnable onQuit) {
+        super(CHROME_COMMAND_NAME_TO_URL, service.getUrl(), timeouts.createHttpClientFactory());
+        this.service = service;
+        this.onQuit = onQuit;
+    }
+
+    @Override
+    public Response execute(Command command) throws IOException {
+        if (DriverCommand.NEW_SESSION.equals(command.getName()) && !service.isRunning()) {
+            service.start();
+        }
+        try {
+            return CommandTimeouts.executeCommand(command.getName(), () -> super.execute(command));
+        } catch (IOException | RuntimeException ex) {
+            if (!service.isRunning()) {
+                throw new WebDriverException("The driver server has unexpectedly died!", ex);
+            }
+            throw ex;
+        } finally {
+            if (DriverCommand.QUIT.equals(command.getName())) {
+                onQuit.run();
+            }
+        }
     }
 
     static {
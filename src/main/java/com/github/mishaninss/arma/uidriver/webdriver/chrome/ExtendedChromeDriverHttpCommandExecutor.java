@@ -16,10 +16,13 @@
 
 package com.github.mishaninss.arma.uidriver.webdriver.chrome;
 
+import org.openqa.selenium.remote.Command;
 import org.openqa.selenium.remote.CommandInfo;
 import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.Response;
 import org.openqa.selenium.remote.http.HttpMethod;
 
+import java.io.IOException;
 import java.net.URL;
 import java.util.Map;
 
@@ -27,7 +30,16 @@ class ExtendedChromeDriverHttpCommandExecutor extends HttpCommandExecutor {
     private static final Map<String, CommandInfo> CHROME_COMMAND_NAME_TO_URL;
 
     ExtendedChromeDriverHttpCommandExecutor(URL addressOfRemoteServer) {
-        super(CHROME_COMMAND_NAME_TO_URL, addressOfRemoteServer);
+        this(addressOfRemoteServer, CommandTimeouts.disabled());
+    }
+
+    ExtendedChromeDriverHttpCommandExecutor(URL addressOfRemoteServer, CommandTimeouts timeouts) {
+        super(CHROME_COMMAND_NAME_TO_URL, addressOfRemoteServer, timeouts.createHttpClientFactory());
+    }
+
+    @Override
+    public Response execute(Command command) throws IOException {
+        return CommandTimeouts.executeCommand(command.getName(), () -> super.execute(command));
     }
 
     static {
@@ -16,12 +16,28 @@
 
 package com.github.mishaninss.arma.uidriver.webdriver.chrome;
 
+import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriverService;
 
 public interface IChromeDriverServiceCreator {
     ChromeDriverService getChromeDriverService();
 
-    void dismissChromeDriverService();
+    /**
+     * @deprecated does nothing, services are released by {@link #dismissChromeDriverService(ChromeDriverService)}
+     */
+    @Deprecated
+    default void dismissChromeDriverService() {
+    }
+
+    /**
+     * Releases a service provided by {@link #getChromeDriverService()} when its session is over
+     */
+    void dismissChromeDriverService(ChromeDriverService chromeDriverService);
 
     void terminateChrome();
+
+    /**
+     * Kills the browser processes of a single session
+     */
+    void terminateChrome(WebDriver driver);
 }
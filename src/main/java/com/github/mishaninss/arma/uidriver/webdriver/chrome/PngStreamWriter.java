@@ -0,0 +1,177 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver.chrome;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes an RGB PNG image row by row, so an image of any height is encoded while only the rows
+ * being appended are held in memory. Compressed data is flushed to the stream in chunks of
+ * {@link #CHUNK_SIZE} bytes.
+ *
+ * @author Sergey Mishanin
+ */
+final class PngStreamWriter implements Closeable {
+
+  private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final byte WHITE = (byte) 0xFF;
+
+  private final DataOutputStream out;
+  private final int width;
+  private final int height;
+  private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+  private final DeflaterOutputStream data;
+  private final byte[] row;
+  private final int[] pixels;
+  private int writtenRows;
+  private boolean closed;
+
+  /**
+   * Writes the PNG header. The stream is not closed by the writer
+   */
+  PngStreamWriter(OutputStream out, int width, int height) throws IOException {
+    this.out = new DataOutputStream(out);
+    this.width = width;
+    this.height = height;
+    this.row = new byte[1 + width * 3];
+    this.pixels = new int[width];
+    this.out.write(SIGNATURE);
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    DataOutputStream headerData = new DataOutputStream(header);
+    headerData.writeInt(width);
+    headerData.writeInt(height);
+    //8 bits per sample, truecolor, deflate, adaptive filtering, no interlace
+    headerData.write(new byte[]{8, 2, 0, 0, 0});
+    writeChunk("IHDR", header.toByteArray(), header.size());
+    data = new DeflaterOutputStream(new ChunkOutputStream(), deflater, CHUNK_SIZE);
+  }
+
+  /**
+   * Appends the rows of the image below the rows written before. Rows beyond the image height are
+   * dropped, a narrower image is padded with white
+   */
+  void writeRows(BufferedImage image) throws IOException {
+    int rows = Math.min(image.getHeight(), height - writtenRows);
+    int imageWidth = Math.min(width, image.getWidth());
+    for (int y = 0; y < rows; y++) {
+      Arrays.fill(row, WHITE);
+      row[0] = 0;
+      image.getRGB(0, y, imageWidth, 1, pixels, 0, imageWidth);
+      for (int x = 0; x < imageWidth; x++) {
+        int pixel = pixels[x];
+        row[1 + x * 3] = (byte) (pixel >> 16);
+        row[2 + x * 3] = (byte) (pixel >> 8);
+        row[3 + x * 3] = (byte) pixel;
+      }
+      data.write(row);
+    }
+    writtenRows += rows;
+  }
+
+  /**
+   * Pads the image with white rows up to the given row, e.g. in place of a tile which could not be
+   * captured
+   */
+  void padTo(int rows) throws IOException {
+    Arrays.fill(row, WHITE);
+    row[0] = 0;
+    for (int limit = Math.min(rows, height); writtenRows < limit; writtenRows++) {
+      data.write(row);
+    }
+  }
+
+  /**
+   * Pads the missing rows with white and finishes the image
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      padTo(height);
+      data.close();
+      writeChunk("IEND", new byte[0], 0);
+      out.flush();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private void writeChunk(String type, byte[] chunk, int length) throws IOException {
+    byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+    CRC32 crc = new CRC32();
+    crc.update(typeBytes);
+    crc.update(chunk, 0, length);
+    out.writeInt(length);
+    out.write(typeBytes);
+    out.write(chunk, 0, length);
+    out.writeInt((int) crc.getValue());
+  }
+
+  /**
+   * Wraps compressed data into IDAT chunks
+   */
+  private class ChunkOutputStream extends OutputStream {
+
+    private final byte[] buffer = new byte[CHUNK_SIZE];
+    private int size;
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      while (length > 0) {
+        int count = Math.min(length, buffer.length - size);
+        System.arraycopy(bytes, offset, buffer, size, count);
+        size += count;
+        offset += count;
+        length -= count;
+        if (size == buffer.length) {
+          flushChunk();
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      flushChunk();
+    }
+
+    private void flushChunk() throws IOException {
+      if (size > 0) {
+        writeChunk("IDAT", buffer, size);
+        size = 0;
+      }
+    }
+  }
+}
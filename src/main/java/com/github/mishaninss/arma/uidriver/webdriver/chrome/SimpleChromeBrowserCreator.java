@@ -4,16 +4,17 @@ import com.github.mishaninss.arma.data.WebDriverProperties;
 import com.github.mishaninss.arma.exceptions.FrameworkConfigurationException;
 import com.github.mishaninss.arma.reporting.IReporter;
 import com.github.mishaninss.arma.reporting.Reporter;
+import com.github.mishaninss.arma.uidriver.webdriver.DriverBinaryResolver;
 import com.github.mishaninss.arma.uidriver.webdriver.ICapabilitiesProvider;
 import com.github.mishaninss.arma.uidriver.webdriver.IWebDriverCreator;
 import com.github.mishaninss.arma.uidriver.webdriver.NetworkConditions;
-import io.github.bonigarcia.wdm.WebDriverManager;
 import io.github.bonigarcia.wdm.config.DriverManagerType;
 import java.net.URL;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import org.openqa.selenium.Capabilities;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeDriverService;
 import org.openqa.selenium.remote.LocalFileDetector;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -27,6 +28,8 @@ public class SimpleChromeBrowserCreator implements IWebDriverCreator {
   private WebDriverProperties properties;
   @Autowired
   private ICapabilitiesProvider capabilitiesProvider;
+  @Autowired
+  private DriverBinaryResolver driverBinaryResolver;
   @Reporter
   private IReporter reporter;
 
@@ -41,11 +44,13 @@ public class SimpleChromeBrowserCreator implements IWebDriverCreator {
     try {
       if (properties.driver().isRemote()) {
         String gridUrl = properties.driver().gridUrl;
-        webDriver = new ExtendedChromeDriver(new URL(gridUrl), capabilities);
+        webDriver = new ExtendedChromeDriver(new URL(gridUrl), capabilities,
+            CommandTimeouts.fromProperties(properties.driver()));
         webDriver.setFileDetector(new LocalFileDetector());
       } else {
-        WebDriverManager.getInstance(DriverManagerType.CHROME).setup();
-        webDriver = new ExtendedChromeDriver(capabilities);
+        driverBinaryResolver.resolve(DriverManagerType.CHROME);
+        webDriver = new ExtendedChromeDriver(ChromeDriverService.createDefaultService(),
+            capabilities, CommandTimeouts.fromProperties(properties.driver()));
       }
       NetworkConditions networkConditions = properties.driver().getNetworkConditions();
       if (networkConditions != null) {
@@ -18,9 +18,9 @@ package com.github.mishaninss.arma.uidriver.webdriver.firefox;
 
 import com.github.mishaninss.arma.data.WebDriverProperties;
 import com.github.mishaninss.arma.exceptions.FrameworkConfigurationException;
+import com.github.mishaninss.arma.uidriver.webdriver.DriverBinaryResolver;
 import com.github.mishaninss.arma.uidriver.webdriver.ICapabilitiesProvider;
 import com.github.mishaninss.arma.uidriver.webdriver.IWebDriverCreator;
-import io.github.bonigarcia.wdm.WebDriverManager;
 import io.github.bonigarcia.wdm.config.DriverManagerType;
 import java.net.URL;
 import java.util.concurrent.TimeUnit;
@@ -43,6 +43,8 @@ public class FirefoxBrowserCreator implements IWebDriverCreator {
   private WebDriverProperties properties;
   @Autowired
   private ICapabilitiesProvider capabilitiesProvider;
+  @Autowired
+  private DriverBinaryResolver driverBinaryResolver;
 
   @Override
   public WebDriver createDriver(Capabilities desiredCapabilities) {
@@ -55,7 +57,7 @@ public class FirefoxBrowserCreator implements IWebDriverCreator {
         String gridUrl = properties.driver().gridUrl;
         webDriver = new RemoteWebDriver(new URL(gridUrl), capabilities);
       } else {
-        WebDriverManager.getInstance(DriverManagerType.FIREFOX).setup();
+        driverBinaryResolver.resolve(DriverManagerType.FIREFOX);
         webDriver = new FirefoxDriver(new FirefoxOptions(capabilities));
       }
     } catch (Exception ex) {
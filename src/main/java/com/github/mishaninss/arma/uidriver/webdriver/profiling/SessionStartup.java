@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver.profiling;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Splits the start of a single browser session into phases. Each call of {@link #lap(Phase)}
+ * attributes the time passed since the previous lap to the given phase
+ *
+ * @author Sergey Mishanin
+ */
+public class SessionStartup {
+
+  public enum Phase {
+    DRIVER_RESOLUTION("driverResolution"),
+    CAPABILITIES("capabilities"),
+    SERVICE_START("serviceStart"),
+    NEW_SESSION("newSession"),
+    NETWORK_CONDITIONS("networkConditions"),
+    TIMEOUTS("timeouts");
+
+    private final String name;
+
+    Phase(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+  }
+
+  private final Map<Phase, Long> durations = new EnumMap<>(Phase.class);
+  private final long timestamp = System.currentTimeMillis();
+  private final long start = System.nanoTime();
+  private long lapStart = start;
+  private long total;
+
+  public void lap(Phase phase) {
+    long now = System.nanoTime();
+    durations.merge(phase, (now - lapStart) / 1_000_000, Long::sum);
+    lapStart = now;
+  }
+
+  void finish() {
+    total = (System.nanoTime() - start) / 1_000_000;
+  }
+
+  /**
+   * Returns durations of the phases in milliseconds
+   */
+  public Map<Phase, Long> getDurations() {
+    return Collections.unmodifiableMap(durations);
+  }
+
+  public long getTotal() {
+    return total;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  @Override
+  public String toString() {
+    return durations.entrySet().stream()
+        .map(entry -> entry.getKey().getName() + "=" + entry.getValue())
+        .collect(Collectors.joining(", ", "[", "]"));
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver.profiling;
+
+import com.github.mishaninss.arma.reporting.IReporter;
+import com.github.mishaninss.arma.reporting.Reporter;
+import com.github.mishaninss.arma.uidriver.webdriver.profiling.SessionStartup.Phase;
+import java.util.EnumMap;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Collects phase timings of browser session starts, so it can be seen whether driver resolution,
+ * grid queueing or a browser launch dominates the start time
+ *
+ * @author Sergey Mishanin
+ */
+@Component
+public class SessionStartupProfiler implements DisposableBean {
+
+  public static final String ENABLED_PROPERTY = "arma.driver.startup.profiler.enabled";
+
+  @Value("${" + ENABLED_PROPERTY + ":true}")
+  private boolean enabled;
+  @Reporter
+  private IReporter reporter;
+
+  private final Map<Phase, LongSummaryStatistics> phaseStats = new EnumMap<>(Phase.class);
+  private LongSummaryStatistics totalStats = new LongSummaryStatistics();
+
+  @Override
+  public synchronized void destroy() {
+    if (enabled && totalStats.getCount() > 0) {
+      printStats();
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public SessionStartup start() {
+    return new SessionStartup();
+  }
+
+  /**
+   * Logs the timings of a finished session start and adds them to the aggregated statistics
+   */
+  public void record(SessionStartup startup) {
+    startup.finish();
+    if (!enabled) {
+      return;
+    }
+    reporter.debug("Driver session started in %d ms %s", startup.getTotal(), startup);
+    synchronized (this) {
+      totalStats.accept(startup.getTotal());
+      startup.getDurations().forEach((phase, duration) -> phaseStats
+          .computeIfAbsent(phase, key -> new LongSummaryStatistics())
+          .accept(duration));
+    }
+  }
+
+  /**
+   * Returns aggregated statistics of the phases in milliseconds
+   */
+  public synchronized Map<Phase, LongSummaryStatistics> getPhaseStats() {
+    Map<Phase, LongSummaryStatistics> copy = new EnumMap<>(Phase.class);
+    phaseStats.forEach((phase, stats) -> copy.put(phase, copy(stats)));
+    return copy;
+  }
+
+  public synchronized LongSummaryStatistics getTotalStats() {
+    return copy(totalStats);
+  }
+
+  public synchronized void clear() {
+    phaseStats.clear();
+    totalStats = new LongSummaryStatistics();
+  }
+
+  public synchronized void printStats() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("Session startup profiler: %d sessions, avg %.0f ms, max %d ms%n",
+        totalStats.getCount(), totalStats.getAverage(), totalStats.getMax()));
+    phaseStats.forEach((phase, stats) -> sb.append(String.format("%s: avg %.0f ms, max %d ms, total %d ms%n",
+        phase.getName(), stats.getAverage(), stats.getMax(), stats.getSum())));
+    reporter.info(sb.toString());
+  }
+
+  private static LongSummaryStatistics copy(LongSummaryStatistics stats) {
+    LongSummaryStatistics copy = new LongSummaryStatistics();
+    copy.combine(stats);
+    return copy;
+  }
+}
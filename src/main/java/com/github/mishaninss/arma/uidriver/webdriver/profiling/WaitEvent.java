@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver.profiling;
+
+/**
+ * Describes a single wait performed by the waiting driver
+ *
+ * @author Sergey Mishanin
+ */
+public class WaitEvent {
+
+  public enum Outcome {
+    SUCCESS, TIMEOUT, ERROR
+  }
+
+  private final String conditionType;
+  private final String locatorsPath;
+  private final long timeout;
+  private final long duration;
+  private final int polls;
+  private final Outcome outcome;
+  private final long timestamp;
+
+  /**
+   * @param conditionType - short description of the awaited condition
+   * @param locatorsPath  - locators path of the awaited element, or null for page-level waits
+   * @param timeout       - wait timeout in milliseconds
+   * @param duration      - actual wait time in milliseconds
+   * @param polls         - number of times the condition has been evaluated
+   * @param outcome       - outcome of the wait
+   */
+  public WaitEvent(String conditionType, String locatorsPath, long timeout, long duration,
+      int polls, Outcome outcome) {
+    this.conditionType = conditionType;
+    this.locatorsPath = locatorsPath;
+    this.timeout = timeout;
+    this.duration = duration;
+    this.polls = polls;
+    this.outcome = outcome;
+    this.timestamp = System.currentTimeMillis();
+  }
+
+  public String getConditionType() {
+    return conditionType;
+  }
+
+  public String getLocatorsPath() {
+    return locatorsPath;
+  }
+
+  public long getTimeout() {
+    return timeout;
+  }
+
+  public long getDuration() {
+    return duration;
+  }
+
+  public int getPolls() {
+    return polls;
+  }
+
+  public Outcome getOutcome() {
+    return outcome;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("[%s] %s %s: %d of %d ms, %d polls", outcome, conditionType,
+        locatorsPath == null ? "" : locatorsPath, duration, timeout, polls);
+  }
+}
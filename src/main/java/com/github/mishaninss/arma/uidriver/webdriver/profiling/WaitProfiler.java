@@ -0,0 +1,230 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver.profiling;
+
+import static com.github.mishaninss.arma.data.DataObject.GSON;
+
+import com.github.mishaninss.arma.reporting.IReporter;
+import com.github.mishaninss.arma.reporting.Reporter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Collects wait events emitted by the waiting driver and attributes the time spent to individual
+ * conditions and elements
+ *
+ * @author Sergey Mishanin
+ */
+@Component
+public class WaitProfiler implements DisposableBean {
+
+  public static final String ENABLED_PROPERTY = "arma.driver.wait.profiler.enabled";
+  public static final String TOP_SIZE_PROPERTY = "arma.driver.wait.profiler.top";
+  public static final String REPORT_FILE_PROPERTY = "arma.driver.wait.profiler.report.file";
+
+  @Value("${" + ENABLED_PROPERTY + ":false}")
+  private boolean enabled;
+  @Value("${" + TOP_SIZE_PROPERTY + ":20}")
+  private int topSize;
+  @Value("${" + REPORT_FILE_PROPERTY + ":}")
+  private String reportFile;
+  @Reporter
+  private IReporter reporter;
+
+  private final Queue<WaitEvent> events = new ConcurrentLinkedQueue<>();
+
+  @Override
+  public void destroy() {
+    if (!enabled || events.isEmpty()) {
+      return;
+    }
+    printTopWaits(topSize);
+    if (StringUtils.isNotBlank(reportFile)) {
+      try {
+        writeReport(new File(reportFile));
+      } catch (IOException ex) {
+        reporter.warn("Could not write wait profiler report to [" + reportFile + "]", ex);
+      }
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public void record(WaitEvent event) {
+    if (enabled) {
+      reporter.trace("Wait event: %s", event);
+      events.add(event);
+    }
+  }
+
+  public List<WaitEvent> getEvents() {
+    return new ArrayList<>(events);
+  }
+
+  public void clear() {
+    events.clear();
+  }
+
+  /**
+   * Returns N most expensive individual waits
+   */
+  public List<WaitEvent> getTopWaits(int count) {
+    return events.stream()
+        .sorted(Comparator.comparingLong(WaitEvent::getDuration).reversed())
+        .limit(count)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Returns N condition/element pairs with the biggest total wait time
+   */
+  public List<WaitStats> getTopWaitStats(int count) {
+    Map<String, WaitStats> stats = new LinkedHashMap<>();
+    events.forEach(event -> stats
+        .computeIfAbsent(event.getConditionType() + " " + StringUtils.defaultString(event.getLocatorsPath()),
+            key -> new WaitStats(event.getConditionType(), event.getLocatorsPath()))
+        .add(event));
+    return stats.values().stream()
+        .sorted(Comparator.comparingLong(WaitStats::getTotalDuration).reversed())
+        .limit(count)
+        .collect(Collectors.toList());
+  }
+
+  public void printTopWaits(int count) {
+    long total = events.stream().mapToLong(WaitEvent::getDuration).sum();
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("Wait profiler: %d waits, %d ms total%n", events.size(), total));
+    getTopWaitStats(count).forEach(stats -> sb.append(stats).append(System.lineSeparator()));
+    reporter.info(sb.toString());
+  }
+
+  /**
+   * Writes all the collected events to a file. Format is chosen by the file extension: .json or
+   * .csv
+   */
+  public void writeReport(File file) throws IOException {
+    List<WaitEvent> snapshot = getEvents();
+    String content;
+    if ("csv".equalsIgnoreCase(FilenameUtils.getExtension(file.getName()))) {
+      StringBuilder sb = new StringBuilder("timestamp,condition,locator,timeout,duration,polls,outcome\n");
+      snapshot.forEach(event -> sb.append(event.getTimestamp()).append(',')
+          .append(csv(event.getConditionType())).append(',')
+          .append(csv(event.getLocatorsPath())).append(',')
+          .append(event.getTimeout()).append(',')
+          .append(event.getDuration()).append(',')
+          .append(event.getPolls()).append(',')
+          .append(event.getOutcome()).append('\n'));
+      content = sb.toString();
+    } else {
+      content = GSON.toJson(snapshot);
+    }
+    FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+    reporter.debug("Wait profiler report has been written to [%s]", file.getAbsolutePath());
+  }
+
+  private static String csv(String value) {
+    if (value == null) {
+      return "";
+    }
+    return "\"" + value.replace("\"", "\"\"") + "\"";
+  }
+
+  /**
+   * Aggregated statistics of waits for the same condition and element
+   */
+  public static class WaitStats {
+
+    private final String conditionType;
+    private final String locatorsPath;
+    private int count;
+    private int timeouts;
+    private long totalDuration;
+    private long maxDuration;
+    private long totalPolls;
+
+    WaitStats(String conditionType, String locatorsPath) {
+      this.conditionType = conditionType;
+      this.locatorsPath = locatorsPath;
+    }
+
+    void add(WaitEvent event) {
+      count++;
+      totalDuration += event.getDuration();
+      maxDuration = Math.max(maxDuration, event.getDuration());
+      totalPolls += event.getPolls();
+      if (event.getOutcome() == WaitEvent.Outcome.TIMEOUT) {
+        timeouts++;
+      }
+    }
+
+    public String getConditionType() {
+      return conditionType;
+    }
+
+    public String getLocatorsPath() {
+      return locatorsPath;
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    public int getTimeouts() {
+      return timeouts;
+    }
+
+    public long getTotalDuration() {
+      return totalDuration;
+    }
+
+    public long getMaxDuration() {
+      return maxDuration;
+    }
+
+    public long getTotalPolls() {
+      return totalPolls;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%8d ms total, %6d ms max, %4d waits, %4d timeouts, %6d polls: %s %s",
+          totalDuration, maxDuration, count, timeouts, totalPolls, conditionType,
+          StringUtils.defaultString(locatorsPath));
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver.visual;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Collection;
+
+/**
+ * Difference hash of an image: the image is downscaled to 9x8 gray pixels, and every bit tells
+ * whether a pixel is brighter than its right neighbour. Similar images have hashes with a small
+ * Hamming distance.
+ *
+ * @author Sergey Mishanin
+ */
+public final class PerceptualHash {
+
+  private static final int WIDTH = 9;
+  private static final int HEIGHT = 8;
+
+  private PerceptualHash() {
+  }
+
+  /**
+   * @param ignored - regions painted over before hashing, so they don't affect the hash
+   */
+  public static long of(BufferedImage image, Collection<Rectangle> ignored) {
+    BufferedImage small = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+    Graphics2D graphics = small.createGraphics();
+    try {
+      graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.drawImage(masked(image, ignored), 0, 0, WIDTH, HEIGHT, null);
+    } finally {
+      graphics.dispose();
+    }
+    long hash = 0;
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH - 1; x++) {
+        hash <<= 1;
+        if (gray(small, x, y) > gray(small, x + 1, y)) {
+          hash |= 1;
+        }
+      }
+    }
+    return hash;
+  }
+
+  public static int distance(long hash1, long hash2) {
+    return Long.bitCount(hash1 ^ hash2);
+  }
+
+  private static BufferedImage masked(BufferedImage image, Collection<Rectangle> ignored) {
+    if (ignored.isEmpty()) {
+      return image;
+    }
+    BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(),
+        BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = copy.createGraphics();
+    try {
+      graphics.drawImage(image, 0, 0, null);
+      graphics.setColor(Color.BLACK);
+      ignored.forEach(graphics::fill);
+    } finally {
+      graphics.dispose();
+    }
+    return copy;
+  }
+
+  private static int gray(BufferedImage image, int x, int y) {
+    return image.getRaster().getSample(x, y, 0);
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver.visual;
+
+import java.io.File;
+
+/**
+ * Outcome of a comparison of a screenshot with its baseline
+ *
+ * @author Sergey Mishanin
+ */
+public class VisualCheckResult {
+
+  public enum Status {
+    /**
+     * Screenshot matches the baseline
+     */
+    MATCH,
+    /**
+     * Screenshot differs from the baseline
+     */
+    MISMATCH,
+    /**
+     * There was no baseline, the screenshot has been stored as a new one
+     */
+    NEW_BASELINE
+  }
+
+  private final String name;
+  private final Status status;
+  private final int hashDistance;
+  private final double diffRatio;
+  private final File diffFile;
+
+  VisualCheckResult(String name, Status status, int hashDistance, double diffRatio, File diffFile) {
+    this.name = name;
+    this.status = status;
+    this.hashDistance = hashDistance;
+    this.diffRatio = diffRatio;
+    this.diffFile = diffFile;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public boolean isMatch() {
+    return status != Status.MISMATCH;
+  }
+
+  /**
+   * Hamming distance between the perceptual hashes, 0..64
+   */
+  public int getHashDistance() {
+    return hashDistance;
+  }
+
+  /**
+   * Share of the compared pixels that differ, or -1 if the pixels have not been compared
+   */
+  public double getDiffRatio() {
+    return diffRatio;
+  }
+
+  /**
+   * Image with the differing regions marked, or null if there is none
+   */
+  public File getDiffFile() {
+    return diffFile;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: %s (hash distance %d, diff ratio %.5f)", name, status, hashDistance,
+        diffRatio);
+  }
+}
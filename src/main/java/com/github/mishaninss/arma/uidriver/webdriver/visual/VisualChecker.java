@@ -0,0 +1,315 @@
+/*
+ * Copyright 2018 Sergey Mishanin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.mishaninss.arma.uidriver.webdriver.visual;
+
+import com.github.mishaninss.arma.reporting.IReporter;
+import com.github.mishaninss.arma.reporting.Reporter;
+import com.github.mishaninss.arma.uidriver.annotations.ElementDriver;
+import com.github.mishaninss.arma.uidriver.interfaces.IElementDriver;
+import com.github.mishaninss.arma.uidriver.interfaces.ILocatable;
+import com.github.mishaninss.arma.uidriver.webdriver.IWdScreenshoter;
+import com.github.mishaninss.arma.uidriver.webdriver.ScreenshotOptions;
+import com.github.mishaninss.arma.uidriver.webdriver.visual.VisualCheckResult.Status;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import javax.imageio.ImageIO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compares screenshots of pages and elements with stored baselines. Perceptual hashes are compared
+ * first: a distant hash rejects the screenshot without looking at the pixels, otherwise the images
+ * are compared region by region. A screenshot of another size than the baseline is a mismatch.
+ *
+ * <p>Accepting a close hash without a pixel comparison is opt-in by
+ * {@link #HASH_ACCEPT_DISTANCE_PROPERTY}. The hash is taken of a tiny greyscale copy of the image,
+ * so it does not notice small local changes, e.g. a changed label, digit or thin border, or a
+ * colour swap of similar brightness; an accepted check may hide such a regression. Hashes and
+ * sizes of the baselines are cached, so an accepted check does not even read the baseline file.
+ *
+ * <p>Ignored regions are given in pixels of the screenshot. A missing baseline is created from
+ * the screenshot.
+ *
+ * @author Sergey Mishanin
+ */
+@Component
+public class VisualChecker {
+
+  public static final String BASELINES_DIR_PROPERTY = "arma.visual.baselines.dir";
+  public static final String UPDATE_BASELINES_PROPERTY = "arma.visual.baselines.update";
+  public static final String HASH_ACCEPT_DISTANCE_PROPERTY = "arma.visual.hash.accept";
+  public static final String HASH_REJECT_DISTANCE_PROPERTY = "arma.visual.hash.reject";
+  public static final String PIXEL_TOLERANCE_PROPERTY = "arma.visual.pixel.tolerance";
+  public static final String MAX_DIFF_RATIO_PROPERTY = "arma.visual.diff.ratio";
+  private static final int REGION_SIZE = 32;
+  private static final String DIFF_DIR = "diff";
+  private static final String PNG = "png";
+
+  @Value("${" + BASELINES_DIR_PROPERTY + ":visual-baselines}")
+  private String baselinesDir;
+  @Value("${" + UPDATE_BASELINES_PROPERTY + ":false}")
+  private boolean updateBaselines;
+  /**
+   * Hash distance up to which a screenshot is accepted without a pixel comparison, -1 disables it
+   */
+  @Value("${" + HASH_ACCEPT_DISTANCE_PROPERTY + ":-1}")
+  private int hashAcceptDistance;
+  @Value("${" + HASH_REJECT_DISTANCE_PROPERTY + ":16}")
+  private int hashRejectDistance;
+  @Value("${" + PIXEL_TOLERANCE_PROPERTY + ":16}")
+  private int pixelTolerance;
+  @Value("${" + MAX_DIFF_RATIO_PROPERTY + ":0.001}")
+  private double maxDiffRatio;
+  @Autowired
+  @Lazy
+  private IWdScreenshoter screenshoter;
+  @ElementDriver
+  @Lazy
+  private IElementDriver elementDriver;
+  @Reporter
+  private IReporter reporter;
+
+  private final Map<String, BaselineHash> baselineHashes = new ConcurrentHashMap<>();
+
+  public VisualCheckResult checkPage(String name, org.openqa.selenium.Rectangle... ignored) {
+    return check(name, screenshoter.takeScreenshot(ScreenshotOptions.png()), Arrays.asList(ignored));
+  }
+
+  public VisualCheckResult checkElement(String name, ILocatable element,
+      org.openqa.selenium.Rectangle... ignored) {
+    return check(name, elementDriver.takeElementScreenshot(element), Arrays.asList(ignored));
+  }
+
+  /**
+   * Compares a screenshot with the baseline of the given name
+   *
+   * @param screenshot - encoded image
+   * @param ignored    - regions of the screenshot excluded from the comparison
+   */
+  public VisualCheckResult check(String name, byte[] screenshot,
+      Collection<org.openqa.selenium.Rectangle> ignored) {
+    List<Rectangle> masks = ignored.stream()
+        .map(rect -> new Rectangle(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight()))
+        .collect(Collectors.toList());
+    try {
+      BufferedImage actual = readImage(screenshot);
+      File baselineFile = getBaselineFile(name);
+      if (updateBaselines || !baselineFile.exists()) {
+        saveImage(actual, baselineFile);
+        reporter.info("Visual baseline [" + name + "] has been saved to " + baselineFile);
+        return new VisualCheckResult(name, Status.NEW_BASELINE, 0, -1, null);
+      }
+      BaselineHash baselineHash = getBaselineHash(baselineFile, masks);
+      int distance = PerceptualHash.distance(PerceptualHash.of(actual, masks), baselineHash.hash);
+      if (actual.getWidth() != baselineHash.width || actual.getHeight() != baselineHash.height) {
+        //a hash is taken of a downscaled image, so it does not tell images of different sizes apart
+        return mismatch(name, distance, 1, actual,
+            List.of(new Rectangle(0, 0, actual.getWidth(), actual.getHeight())));
+      }
+      if (distance <= hashAcceptDistance) {
+        return new VisualCheckResult(name, Status.MATCH, distance, -1, null);
+      }
+      if (distance >= hashRejectDistance) {
+        return mismatch(name, distance, -1, actual, List.of());
+      }
+      return compareRegions(name, distance, actual, ImageIO.read(baselineFile), masks);
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Could not compare screenshot [" + name + "] with its baseline",
+          ex);
+    }
+  }
+
+  /**
+   * Forgets the cached hashes of the baselines
+   */
+  public void clearCache() {
+    baselineHashes.clear();
+  }
+
+  private VisualCheckResult compareRegions(String name, int distance, BufferedImage actual,
+      BufferedImage baseline, List<Rectangle> masks) throws IOException {
+    int width = actual.getWidth();
+    int height = actual.getHeight();
+    if (baseline == null || baseline.getWidth() != width || baseline.getHeight() != height) {
+      return mismatch(name, distance, 1, actual, List.of(new Rectangle(0, 0, width, height)));
+    }
+    List<Rectangle> diffRegions = new ArrayList<>();
+    long comparedPixels = 0;
+    long diffPixels = 0;
+    for (int top = 0; top < height; top += REGION_SIZE) {
+      for (int left = 0; left < width; left += REGION_SIZE) {
+        Rectangle region = new Rectangle(left, top, Math.min(REGION_SIZE, width - left),
+            Math.min(REGION_SIZE, height - top));
+        List<Rectangle> regionMasks = masks.stream()
+            .filter(region::intersects)
+            .collect(Collectors.toList());
+        if (regionMasks.stream().anyMatch(mask -> mask.contains(region))) {
+          continue;
+        }
+        int[] actualPixels = actual.getRGB(left, top, region.width, region.height, null, 0,
+            region.width);
+        int[] baselinePixels = baseline.getRGB(left, top, region.width, region.height, null, 0,
+            region.width);
+        int regionDiff = 0;
+        for (int i = 0; i < actualPixels.length; i++) {
+          if (!regionMasks.isEmpty() && isMasked(regionMasks, left + i % region.width,
+              top + i / region.width)) {
+            continue;
+          }
+          comparedPixels++;
+          if (!isSimilar(actualPixels[i], baselinePixels[i])) {
+            regionDiff++;
+          }
+        }
+        if (regionDiff > 0) {
+          diffPixels += regionDiff;
+          diffRegions.add(region);
+        }
+      }
+    }
+    double diffRatio = comparedPixels == 0 ? 0 : (double) diffPixels / comparedPixels;
+    if (diffRatio <= maxDiffRatio) {
+      return new VisualCheckResult(name, Status.MATCH, distance, diffRatio, null);
+    }
+    return mismatch(name, distance, diffRatio, actual, diffRegions);
+  }
+
+  private static boolean isMasked(List<Rectangle> masks, int x, int y) {
+    for (Rectangle mask : masks) {
+      if (mask.contains(x, y)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isSimilar(int rgb1, int rgb2) {
+    for (int shift = 0; shift < 24; shift += 8) {
+      if (Math.abs((rgb1 >> shift & 0xFF) - (rgb2 >> shift & 0xFF)) > pixelTolerance) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Saves the screenshot with the differing regions marked and attaches it to the report
+   */
+  private VisualCheckResult mismatch(String name, int distance, double diffRatio,
+      BufferedImage actual, List<Rectangle> diffRegions) throws IOException {
+    BufferedImage diff = new BufferedImage(actual.getWidth(), actual.getHeight(),
+        BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = diff.createGraphics();
+    try {
+      graphics.drawImage(actual, 0, 0, null);
+      graphics.setColor(Color.RED);
+      graphics.setStroke(new BasicStroke(2));
+      diffRegions.forEach(graphics::draw);
+    } finally {
+      graphics.dispose();
+    }
+    File diffFile = new File(new File(baselinesDir, DIFF_DIR), toFileName(name));
+    reporter.attachScreenshot(saveImage(diff, diffFile));
+    VisualCheckResult result = new VisualCheckResult(name, Status.MISMATCH, distance, diffRatio,
+        diffFile);
+    reporter.info(result.toString());
+    return result;
+  }
+
+  /**
+   * Hashes are cached per baseline file, so the cache is bounded by the number of baselines. A
+   * baseline checked with other masks is hashed again.
+   */
+  private BaselineHash getBaselineHash(File baselineFile, List<Rectangle> masks)
+      throws IOException {
+    String key = baselineFile.getAbsolutePath();
+    String masksKey = masks.toString();
+    long lastModified = baselineFile.lastModified();
+    BaselineHash cached = baselineHashes.get(key);
+    if (cached != null && cached.lastModified == lastModified && cached.masks.equals(masksKey)) {
+      return cached;
+    }
+    BufferedImage baseline = readImage(Files.readAllBytes(baselineFile.toPath()));
+    BaselineHash baselineHash = new BaselineHash(lastModified, masksKey,
+        PerceptualHash.of(baseline, masks), baseline.getWidth(), baseline.getHeight());
+    baselineHashes.put(key, baselineHash);
+    return baselineHash;
+  }
+
+  private File getBaselineFile(String name) {
+    return new File(baselinesDir, toFileName(name));
+  }
+
+  private static String toFileName(String name) {
+    return name.replaceAll("[^\\w.-]", "_") + "." + PNG;
+  }
+
+  private static BufferedImage readImage(byte[] image) throws IOException {
+    BufferedImage bufferedImage = image == null ? null : ImageIO.read(new ByteArrayInputStream(image));
+    if (bufferedImage == null) {
+      throw new IOException("Screenshot is empty or has an unsupported format");
+    }
+    return bufferedImage;
+  }
+
+  /**
+   * @return the encoded image
+   */
+  private static byte[] saveImage(BufferedImage image, File file) throws IOException {
+    Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, PNG, out);
+    byte[] encoded = out.toByteArray();
+    Files.write(file.toPath(), encoded);
+    return encoded;
+  }
+
+  private static class BaselineHash {
+
+    private final long lastModified;
+    private final String masks;
+    private final long hash;
+    private final int width;
+    private final int height;
+
+    BaselineHash(long lastModified, String masks, long hash, int width, int height) {
+      this.lastModified = lastModified;
+      this.masks = masks;
+      this.hash = hash;
+      this.width = width;
+      this.height = height;
+    }
+  }
+}